@@ -0,0 +1,520 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+
+/**
+ * Command line interface to process whole directories without any GUI, e.g. on servers
+ * (run with -Djava.awt.headless=true). Files are processed concurrently on a pool of worker threads.
+ * Files of different directories belong together if they have the same name (without extension).
+ */
+public class BatchCrypting {
+	private static final String USAGE =
+			"Usage: java -Djava.awt.headless=true BatchCrypting [--threads N] [--band-rows N]\n" +
+			"       [--deflate 0-9] [--filter none|sub|up|average|paeth|adaptive]\n" +
+			"       [--dither threshold|ordered|diffusion] <command> <arguments>\n" +
+			"Commands:\n" +
+			"  keygen <width> <height> <count> <outDir>      generate count keys for images up to width x height\n" +
+			"  encrypt <keyDir> <srcDir> <outDir>            encrypt every source with the key of the same name\n" +
+			"  keygen-encrypt <srcDir> <outDir>              generate a key for every source and encrypt it,\n" +
+			"                                                into outDir/keys and outDir/encrypted\n" +
+			"  stegano <firstDir> <secondDir> <hideDir> <outDir>\n" +
+			"                                                hide the images of hideDir in those of the same name\n" +
+			"  decrypt <keyDir> <encDir> <outDir>            decrypt every encrypted image with the key of the same name\n" +
+			"  decrypt-all <keyFile> <encDir> <outDir>       decrypt every encrypted image with the same key\n" +
+			"  color-encrypt <srcDir> <outDir>               generate a colour key for every source and encrypt it,\n" +
+			"                                                into outDir/keys and outDir/encrypted\n" +
+			"  color-decrypt <keyDir> <encDir> <outDir>      decrypt every colour encrypted image with its colour key\n" +
+			"  to-raw <inDir> <outDir>                       convert every image to a raw share file (.vcs)\n" +
+			"  to-png <inDir> <outDir>                       convert every raw share file to a 1-bit png\n" +
+			"  raw-decrypt <keyDir> <encDir> <outDir>        decrypt every raw encrypted share with the raw key of the same name\n" +
+			"Colour commands dither by diffusion unless --dither is given, the others use the threshold.";
+
+	// where the commands generating keys write them and the encrypted images, so decrypt can take both directories
+	private static final String KEYS_DIR = "keys";
+	private static final String ENCRYPTED_DIR = "encrypted";
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int bandRows = StreamingEncryption.DEFAULT_BAND_ROWS;
+	private SharePngWriter writer = SharePngWriter.DEFAULT;
+	private Halftone.Method dither = null; // the default of the command if null
+
+	public static void main(String[] args) {
+		System.exit(new BatchCrypting().run(args));
+	}
+
+	/**
+	 * Runs a command
+	 * @param args The command line
+	 * @return The exit code: 0 if everything went well, 1 on wrong usage, 2 if any file failed
+	 */
+	public int run(String[] args) {
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		try {
+			while (!arguments.isEmpty() && arguments.get(0).startsWith("--")) {
+				String option = arguments.remove(0);
+				if (arguments.isEmpty()) return usage("Missing value for " + option);
+				String value = arguments.remove(0);
+				if (option.equals("--filter")) {
+					try {
+						writer = new SharePngWriter(writer.getLevel(), SharePngWriter.parseFilter(value));
+					} catch (IllegalArgumentException e) {
+						return usage("Unknown filter " + value);
+					}
+				} else if (option.equals("--dither")) {
+					try {
+						dither = Halftone.Method.valueOf(value.toUpperCase(Locale.ROOT));
+					} catch (IllegalArgumentException e) {
+						return usage("Unknown dither method " + value);
+					}
+				} else if (option.equals("--deflate")) {
+					int level = Integer.parseInt(value);
+					if (level < 0 || level > 9) return usage("--deflate has to be 0 to 9");
+					writer = new SharePngWriter(level, writer.getFilter());
+				} else if (option.equals("--threads") || option.equals("--band-rows")) {
+					int number = Integer.parseInt(value);
+					if (number < 1) return usage(option + " has to be at least 1");
+					if (option.equals("--threads")) {
+						threads = number;
+					} else {
+						bandRows = number;
+					}
+				} else {
+					return usage("Unknown option " + option);
+				}
+			}
+			if (arguments.isEmpty()) return usage(null);
+
+			String command = arguments.remove(0);
+			List<Callable<Result>> jobs;
+			if (command.equals("keygen") && arguments.size() == 4) {
+				jobs = keygenJobs(Integer.parseInt(arguments.get(0)), Integer.parseInt(arguments.get(1)),
+						Integer.parseInt(arguments.get(2)), outDir(arguments.get(3)));
+			} else if (command.equals("encrypt") && arguments.size() == 3) {
+				jobs = encryptJobs(dir(arguments.get(0)), dir(arguments.get(1)), outDir(arguments.get(2)));
+			} else if (command.equals("keygen-encrypt") && arguments.size() == 2) {
+				jobs = keygenEncryptJobs(dir(arguments.get(0)), outDir(arguments.get(1), KEYS_DIR), outDir(arguments.get(1), ENCRYPTED_DIR));
+			} else if (command.equals("stegano") && arguments.size() == 4) {
+				jobs = steganoJobs(dir(arguments.get(0)), dir(arguments.get(1)), dir(arguments.get(2)), outDir(arguments.get(3)));
+			} else if (command.equals("decrypt") && arguments.size() == 3) {
+				jobs = decryptJobs(dir(arguments.get(0)), dir(arguments.get(1)), outDir(arguments.get(2)));
+			} else if (command.equals("decrypt-all") && arguments.size() == 3) {
+				return decryptAll(new File(arguments.get(0)), dir(arguments.get(1)), outDir(arguments.get(2)));
+			} else if (command.equals("color-encrypt") && arguments.size() == 2) {
+				jobs = colorEncryptJobs(dir(arguments.get(0)), outDir(arguments.get(1), KEYS_DIR), outDir(arguments.get(1), ENCRYPTED_DIR));
+			} else if (command.equals("color-decrypt") && arguments.size() == 3) {
+				jobs = colorDecryptJobs(dir(arguments.get(0)), dir(arguments.get(1)), outDir(arguments.get(2)));
+			} else if (command.equals("to-raw") && arguments.size() == 2) {
+				jobs = toRawJobs(dir(arguments.get(0)), outDir(arguments.get(1)));
+			} else if (command.equals("to-png") && arguments.size() == 2) {
+				jobs = toPngJobs(dir(arguments.get(0)), outDir(arguments.get(1)));
+			} else if (command.equals("raw-decrypt") && arguments.size() == 3) {
+				jobs = rawDecryptJobs(dir(arguments.get(0)), dir(arguments.get(1)), outDir(arguments.get(2)));
+			} else {
+				return usage("Unknown command or wrong amount of arguments: " + command);
+			}
+			return runJobs(jobs);
+		} catch (NumberFormatException e) {
+			return usage("Not a number: " + e.getLocalizedMessage());
+		} catch (IOException e) {
+			return usage(e.getLocalizedMessage());
+		}
+	}
+
+	private int usage(String error) {
+		if (error != null) System.err.println(error);
+		System.err.println(USAGE);
+		return 1;
+	}
+
+	/**
+	 * Runs all jobs on the worker pool and prints a summary
+	 */
+	private int runJobs(List<Callable<Result>> jobs) {
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<>();
+		for (Callable<Result> job : jobs) futures.add(pool.submit(job));
+		pool.shutdown();
+
+		int failed = 0;
+		long pixels = 0;
+		for (Future<Result> future : futures) {
+			Result result;
+			try {
+				result = future.get();
+			} catch (ExecutionException e) {
+				// only errors other than OutOfMemoryError get here, see job()
+				result = new Result("?", 0, e.getCause().toString());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				pool.shutdownNow();
+				return 2;
+			}
+			if (result.error != null) {
+				++failed;
+				System.err.println(result.name + ": " + result.error);
+			}
+			pixels += result.pixels;
+		}
+
+		printSummary(jobs.size(), failed, pixels, start);
+		return failed == 0 ? 0 : 2;
+	}
+
+	/**
+	 * Prints the files processed since start (System.nanoTime) and how fast
+	 */
+	private void printSummary(int files, int failed, long pixels, long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format(Locale.ROOT, "%d files, %d failed, %.2f s, %.2f files/s, %.2f MP/s (%d threads)",
+				files, failed, seconds, files / seconds, pixels / 1e6 / seconds, threads));
+	}
+
+	/**
+	 * Wraps a job so that any exception it throws becomes a failed result for the file. Running out of memory
+	 * only fails this file as well, its images can be collected once the job is left.
+	 */
+	private static Callable<Result> job(String name, Callable<Result> job) {
+		return () -> {
+			try {
+				return job.call();
+			} catch (Exception | OutOfMemoryError e) {
+				return new Result(name, 0, e.toString());
+			}
+		};
+	}
+
+	private List<Callable<Result>> keygenJobs(int width, int height, int count, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		int digits = String.valueOf(count).length();
+		for (int i = 1; i <= count; ++i) {
+			String name = String.format("key_%0" + digits + "d", i);
+			jobs.add(job(name, () -> {
+				BitShare key = Crypting.generateKeyParallel(new BitShare(width, height));
+				writer.write(key, new File(outDir, name + ".png"));
+				return new Result(name, (long)key.getWidth() * key.getHeight(), null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> encryptJobs(File keyDir, File srcDir, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File srcFile : listImages(srcDir)) {
+			String name = baseName(srcFile);
+			jobs.add(job(name, () -> {
+				File keyFile = new File(keyDir, name + ".png");
+				if (!keyFile.exists()) return new Result(name, 0, "No key " + keyFile);
+				File encFile = new File(outDir, name + ".png");
+				if (!StreamingEncryption.encrypt(keyFile, srcFile, encFile, bandRows, writer, dither(Halftone.Method.THRESHOLD))) {
+					return new Result(name, 0, "Not a valid key or source too large for the key");
+				}
+				return new Result(name, imagePixels(encFile), null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> keygenEncryptJobs(File srcDir, File keyDir, File encDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File srcFile : listImages(srcDir)) {
+			String name = baseName(srcFile);
+			jobs.add(job(name, () -> {
+				File keyFile = new File(keyDir, name + ".png");
+				File encFile = new File(encDir, name + ".png");
+				if (!StreamingEncryption.generateKeyAndEncrypt(srcFile, keyFile, encFile, bandRows, writer, dither(Halftone.Method.THRESHOLD))) {
+					return new Result(name, 0, "Not fit for encryption");
+				}
+				return new Result(name, imagePixels(encFile), null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> steganoJobs(File firstDir, File secondDir, File hideDir, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File hideFile : listImages(hideDir)) {
+			String name = baseName(hideFile);
+			jobs.add(job(name, () -> {
+				File firstFile = findImage(firstDir, name);
+				File secondFile = findImage(secondDir, name);
+				if (firstFile == null || secondFile == null) return new Result(name, 0, "No first or second image");
+
+				// same as SteganoFrame: all three are resized to the biggest dimension
+				int width = 0;
+				int height = 0;
+				for (File f : new File[] {firstFile, secondFile, hideFile}) {
+					BufferedImage image = ImageIO.read(f);
+					if (image == null) return new Result(name, 0, f + " is not an image");
+					width = Math.max(width, image.getWidth());
+					height = Math.max(height, image.getHeight());
+				}
+				BitShare first = Crypting.loadAndCheckSourceShare(firstFile, width, height, true, dither(Halftone.Method.THRESHOLD));
+				BitShare second = Crypting.loadAndCheckSourceShare(secondFile, width, height, true, dither(Halftone.Method.THRESHOLD));
+				BitShare toHide = Crypting.loadAndCheckSourceShare(hideFile, width, height, true, dither(Halftone.Method.THRESHOLD));
+				if (first == null || second == null || toHide == null) {
+					return new Result(name, 0, "Not fit for steganography");
+				}
+
+				BitShare[] shares = Crypting.hideImage(first, second, toHide);
+				writer.write(shares[0], new File(outDir, name + ".first.png"));
+				writer.write(shares[1], new File(outDir, name + ".second.png"));
+				return new Result(name, (long)shares[0].getWidth() * shares[0].getHeight(), null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> decryptJobs(File keyDir, File encDir, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File encFile : listImages(encDir)) {
+			String name = baseName(encFile);
+			jobs.add(job(name, () -> {
+				File keyFile = new File(keyDir, name + ".png");
+				BitShare key = Crypting.loadAndCheckEncrShare(keyFile);
+				if (key == null) return new Result(name, 0, keyFile + " is not a valid key file");
+				BitShare enc = Crypting.loadAndCheckEncrShare(encFile);
+				if (enc == null) return new Result(name, 0, "Not an encrypted image");
+
+				BitShare clean = Crypting.decryptImage(key, enc);
+				if (clean == null) return new Result(name, 0, "Key and encrypted image not the same size");
+				writer.write(clean, new File(outDir, name + ".png"));
+				return new Result(name, (long)key.getWidth() * key.getHeight(), null);
+			}));
+		}
+		return jobs;
+	}
+
+	/**
+	 * Decrypts every image of encDir with the same key through BatchDecryption, which loads the key only once
+	 * @return The exit code, like runJobs
+	 */
+	private int decryptAll(File keyFile, File encDir, File outDir) throws IOException {
+		if (!keyFile.isFile()) throw new IOException("No key " + keyFile);
+		List<File> encFiles = listImages(encDir);
+		long start = System.nanoTime();
+		LongAdder pixels = new LongAdder();
+		BatchDecryption.Output files = BatchDecryption.toDirectory(outDir, writer);
+		Map<File, String> failed = BatchDecryption.decryptAll(keyFile, encFiles, threads, (encFile, clean) -> {
+			files.write(encFile, clean);
+			pixels.add((long)clean.getWidth() * clean.getHeight());
+		});
+		if (failed == null) {
+			System.err.println(keyFile + " is not a valid key file");
+			return 2;
+		}
+		for (Map.Entry<File, String> failure : failed.entrySet()) {
+			System.err.println(baseName(failure.getKey()) + ": " + failure.getValue());
+		}
+		printSummary(encFiles.size(), failed.size(), pixels.sum(), start);
+		return failed.isEmpty() ? 0 : 2;
+	}
+
+	private List<Callable<Result>> colorEncryptJobs(File srcDir, File keyDir, File encDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File srcFile : listImages(srcDir)) {
+			String name = baseName(srcFile);
+			jobs.add(job(name, () -> {
+				BufferedImage imgSrc = ImageIO.read(srcFile);
+				if (imgSrc == null) return new Result(name, 0, "Not an image");
+				ColorShares[] shares = ColorShares.generateKeyAndEncrypt(imgSrc, dither(Halftone.Method.DIFFUSION), Progress.NONE);
+				ImageIO.write(shares[0].toImage(), "png", new File(keyDir, name + ".png"));
+				ImageIO.write(shares[1].toImage(), "png", new File(encDir, name + ".png"));
+				return new Result(name, (long)shares[1].getWidth() * shares[1].getHeight(), null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> colorDecryptJobs(File keyDir, File encDir, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File encFile : listImages(encDir)) {
+			String name = baseName(encFile);
+			jobs.add(job(name, () -> {
+				File keyFile = new File(keyDir, name + ".png");
+				BufferedImage imgKey = ImageIO.read(keyFile);
+				if (imgKey == null) return new Result(name, 0, keyFile + " is not a valid key file");
+				BufferedImage imgEnc = ImageIO.read(encFile);
+				if (imgEnc == null) return new Result(name, 0, "Not an encrypted image");
+
+				ColorShares clean = ColorShares.decrypt(ColorShares.fromImage(imgKey), ColorShares.fromImage(imgEnc));
+				if (clean == null) return new Result(name, 0, "Key and encrypted image not the same size");
+				ImageIO.write(clean.toImage(), "png", new File(outDir, name + ".png"));
+				return new Result(name, (long)imgKey.getWidth() * imgKey.getHeight(), null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> toRawJobs(File inDir, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File imageFile : listImages(inDir)) {
+			String name = baseName(imageFile);
+			jobs.add(job(name, () -> {
+				File rawFile = new File(outDir, name + MappedShare.EXTENSION);
+				// odd sizes can't be shares of the 2x2 scheme, so they're b/w images
+				if (!MappedShare.importImage(imageFile, rawFile, MappedShare.SCHEME_2X2, bandRows)
+						&& !MappedShare.importImage(imageFile, rawFile, MappedShare.SCHEME_BW, bandRows)) {
+					return new Result(name, 0, "Not an image");
+				}
+				return new Result(name, imagePixels(imageFile), null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> toPngJobs(File inDir, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File rawFile : listFiles(inDir, MappedShare.EXTENSION)) {
+			String name = baseName(rawFile);
+			jobs.add(job(name, () -> {
+				long pixels;
+				try (MappedShare share = MappedShare.open(rawFile)) {
+					if (!share.verify()) return new Result(name, 0, "Checksum mismatch");
+					writer.write(share.toBandImage(bandRows), new File(outDir, name + ".png"), Progress.NONE);
+					pixels = (long)share.getWidth() * share.getHeight();
+				}
+				return new Result(name, pixels, null);
+			}));
+		}
+		return jobs;
+	}
+
+	private List<Callable<Result>> rawDecryptJobs(File keyDir, File encDir, File outDir) {
+		List<Callable<Result>> jobs = new ArrayList<>();
+		for (File encFile : listFiles(encDir, MappedShare.EXTENSION)) {
+			String name = baseName(encFile);
+			jobs.add(job(name, () -> {
+				File keyFile = new File(keyDir, name + MappedShare.EXTENSION);
+				if (!keyFile.exists()) return new Result(name, 0, "No key " + keyFile);
+				if (!MappedShare.decrypt(keyFile, encFile, new File(outDir, name + MappedShare.EXTENSION))) {
+					return new Result(name, 0, "Key and encrypted share not the same size");
+				}
+				try (MappedShare enc = MappedShare.open(encFile)) {
+					return new Result(name, (long)enc.getWidth() * enc.getHeight(), null);
+				}
+			}));
+		}
+		return jobs;
+	}
+
+	/**
+	 * @return The --dither method or the default of the command
+	 */
+	private Halftone.Method dither(Halftone.Method fallback) {
+		return dither != null ? dither : fallback;
+	}
+
+	private static File dir(String path) throws IOException {
+		File dir = new File(path);
+		if (!dir.isDirectory()) throw new IOException("Not a directory: " + path);
+		return dir;
+	}
+
+	/**
+	 * @return The subdirectory of an output directory, created if needed
+	 */
+	private static File outDir(String path, String subDir) throws IOException {
+		return outDir(new File(path, subDir).getPath());
+	}
+
+	private static File outDir(String path) throws IOException {
+		File dir = new File(path);
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create directory " + path);
+		return dir;
+	}
+
+	/**
+	 * @return All files of the directory ImageIO can read judging by their extension, sorted by name
+	 */
+	private static List<File> listImages(File dir) {
+		Set<String> suffixes = new HashSet<>();
+		for (String suffix : ImageIO.getReaderFileSuffixes()) suffixes.add(suffix.toLowerCase(Locale.ROOT));
+
+		File[] files = dir.listFiles();
+		List<File> images = new ArrayList<>();
+		if (files == null) return images;
+		Arrays.sort(files);
+		for (File f : files) {
+			String fileName = f.getName();
+			int dot = fileName.lastIndexOf('.');
+			if (f.isFile() && dot > 0 && suffixes.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT))) images.add(f);
+		}
+		return images;
+	}
+
+	/**
+	 * @return All files of the directory with the given extension, sorted by name
+	 */
+	private static List<File> listFiles(File dir, String extension) {
+		File[] files = dir.listFiles();
+		List<File> matching = new ArrayList<>();
+		if (files == null) return matching;
+		Arrays.sort(files);
+		for (File f : files) {
+			if (f.isFile() && f.getName().toLowerCase(Locale.ROOT).endsWith(extension)) matching.add(f);
+		}
+		return matching;
+	}
+
+	/**
+	 * @return The first image in the directory with the given name (without extension) or null
+	 */
+	private static File findImage(File dir, String name) {
+		for (File f : listImages(dir)) {
+			if (baseName(f).equals(name)) return f;
+		}
+		return null;
+	}
+
+	private static String baseName(File f) {
+		String fileName = f.getName();
+		int dot = fileName.lastIndexOf('.');
+		return dot > 0 ? fileName.substring(0, dot) : fileName;
+	}
+
+	private static long imagePixels(File f) throws IOException {
+		try (ImageInputStream stream = ImageIO.createImageInputStream(f)) {
+			ImageReader reader = ImageIO.getImageReaders(stream).next();
+			try {
+				reader.setInput(stream);
+				return (long)reader.getWidth(0) * reader.getHeight(0);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * The outcome of processing one file
+	 */
+	private static class Result {
+		final String name;
+		final long pixels;
+		final String error;
+
+		Result(String name, long pixels, String error) {
+			this.name = name;
+			this.pixels = pixels;
+			this.error = error;
+		}
+	}
+}
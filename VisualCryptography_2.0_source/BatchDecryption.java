@@ -0,0 +1,88 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Decrypts many encrypted images with the same key: the key is loaded and checked once (through the ShareCache) and
+ * all workers decrypt with that one share, only the encrypted images and the results take memory per worker.
+ */
+public class BatchDecryption {
+	/**
+	 * Receives the decrypted images, from several threads at once
+	 */
+	public interface Output {
+		/**
+		 * @param encFile The encrypted image
+		 * @param clean Its decrypted image
+		 * @throws IOException If the result couldn't be written, counts as failure of the file
+		 */
+		void write(File encFile, BitShare clean) throws IOException;
+	}
+
+	/**
+	 * Writes every decrypted image as 1-bit png with the name of its encrypted image into a directory
+	 * @param outDir The directory
+	 * @param writer How the pngs are written
+	 * @return The output
+	 */
+	public static Output toDirectory(File outDir, SharePngWriter writer) {
+		return (encFile, clean) -> {
+			String name = encFile.getName();
+			int dot = name.lastIndexOf('.');
+			writer.write(clean, new File(outDir, (dot > 0 ? name.substring(0, dot) : name) + ".png"));
+		};
+	}
+
+	/**
+	 * Decrypts encrypted images with one key on the given amount of threads
+	 * @param keyFile The key
+	 * @param encFiles The encrypted images
+	 * @param threads The amount of images to decrypt at once
+	 * @param output Receives the decrypted images
+	 * @return The files that failed with the reason, in the order given (empty if all were decrypted), or null if
+	 * keyFile isn't a valid key
+	 * @throws IOException If the key couldn't be read
+	 */
+	public static Map<File, String> decryptAll(File keyFile, List<File> encFiles, int threads, Output output) throws IOException {
+		BitShare key = ShareCache.getDefault().getEncrShare(keyFile);
+		if (key == null) return null;
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, encFiles.size())));
+		List<Future<String>> futures = new ArrayList<>();
+		for (File encFile : encFiles) {
+			futures.add(pool.submit(() -> {
+				BitShare enc = Crypting.loadAndCheckEncrShare(encFile);
+				if (enc == null) return "Not an encrypted image";
+				BitShare clean = Crypting.decryptImage(key, enc);
+				if (clean == null) return "Key and encrypted image not the same size";
+				output.write(encFile, clean);
+				return null;
+			}));
+		}
+		pool.shutdown();
+
+		Map<File, String> failed = new LinkedHashMap<>();
+		for (int i = 0; i < encFiles.size(); ++i) {
+			String error;
+			try {
+				error = futures.get(i).get();
+			} catch (ExecutionException e) {
+				error = e.getCause().toString();
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted");
+			}
+			if (error != null) failed.put(encFiles.get(i), error);
+		}
+		return failed;
+	}
+}
@@ -0,0 +1,237 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+
+/**
+ * A black & transparent image (key, encrypted image, overlay or b/w source) stored with one bit per pixel.
+ * Every row is a long[] where bit (x % 64) of word (x / 64) is set if the pixel at x is black. Bits past
+ * the width of the share are always 0, so whole words can be combined with bitwise operations.
+ */
+public class BitShare {
+	/** ARGB value of a black pixel */
+	public static final int BLACK = 0xFF000000;
+	/** ARGB value of a transparent pixel */
+	public static final int TRANSPARENT = 0x00000000;
+
+	private final int width;
+	private final int height;
+	private final int wordsPerRow;
+	private final long[][] rows;
+
+	/**
+	 * Creates a new, fully transparent share
+	 * @param width The width in pixels
+	 * @param height The height in pixels
+	 */
+	public BitShare(int width, int height) {
+		if (width < 0 || height < 0) throw new IllegalArgumentException("Negative size: " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.rows = new long[height][wordsPerRow];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return The amount of longs every row consists of
+	 */
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	/**
+	 * Gets the backing array of a row (not a copy). Callers writing into it must keep the bits past the width 0.
+	 * @param y The row
+	 * @return The bits of the row
+	 */
+	public long[] getRow(int y) {
+		return rows[y];
+	}
+
+	/**
+	 * @return A mask of the bits of the last word of a row that belong to the share
+	 */
+	public long getTailMask() {
+		int rest = width & 63;
+		return rest == 0 ? -1L : (1L << rest) - 1;
+	}
+
+	public boolean isBlack(int x, int y) {
+		return (rows[y][x >>> 6] & (1L << x)) != 0;
+	}
+
+	public void setBlack(int x, int y, boolean black) {
+		if (black) {
+			rows[y][x >>> 6] |= 1L << x;
+		} else {
+			rows[y][x >>> 6] &= ~(1L << x);
+		}
+	}
+
+	/**
+	 * @return The amount of black pixels
+	 */
+	public long countBlack() {
+		long count = 0;
+		for (long[] row : rows) {
+			for (long word : row) count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Whether fromImage turns a pixel black: everything but transparent and white pixels is black
+	 * @param iRgb The ARGB value of the pixel
+	 * @return true if the pixel is black
+	 */
+	public static boolean isBlackPixel(int iRgb) {
+		return iRgb>>>24 != 0 && iRgb != 0xFFFFFFFF;
+	}
+
+	/**
+	 * Converts an image into a share. Transparent and white pixels become transparent, everything else black
+	 * (like generateKey treats its input).
+	 * @param img The image to convert
+	 * @return The share or null if img was null
+	 */
+	public static BitShare fromImage(BufferedImage img) {
+		if (img == null) return null;
+		BitShare share = new BitShare(img.getWidth(), img.getHeight());
+		share.draw(img, BitShare::isBlackPixel, 0, 0);
+		return share;
+	}
+
+	/**
+	 * Turns the pixels of an image black that isBlack accepts, with the top left corner of the image at offsetX,
+	 * offsetY. Other pixels of the share are left as they are. Palette images (like 1-bit pngs or tiffs) are decoded
+	 * straight from their indices, asking isBlack only once per palette entry. Other images are read with getRGB.
+	 * @param img The image, has to fit into the share at the offset
+	 * @param isBlack Decides whether an ARGB value is black
+	 * @param offsetX Where the left column of the image goes
+	 * @param offsetY Where the top row of the image goes
+	 */
+	public void draw(BufferedImage img, IntPredicate isBlack, int offsetX, int offsetY) {
+		int imgWidth = img.getWidth();
+		int imgHeight = img.getHeight();
+		if (offsetX < 0 || offsetY < 0 || offsetX + imgWidth > width || offsetY + imgHeight > height) {
+			throw new IllegalArgumentException("Image doesn't fit into the share at " + offsetX + ", " + offsetY);
+		}
+		long[] bits = new long[(imgWidth + 63) >>> 6];
+		long tailMask = (imgWidth & 63) == 0 ? -1L : (1L << imgWidth) - 1;
+
+		WritableRaster raster = img.getRaster();
+		SampleModel sampleModel = raster.getSampleModel();
+		if (img.getColorModel() instanceof IndexColorModel) {
+			IndexColorModel palette = (IndexColorModel)img.getColorModel();
+			// decide once per index, indices past the palette are white
+			boolean[] blackIndex = new boolean[1 << sampleModel.getSampleSize(0)];
+			for (int i = 0; i < Math.min(palette.getMapSize(), blackIndex.length); ++i) {
+				blackIndex[i] = isBlack.test(palette.getRGB(i));
+			}
+
+			if (isPackedBits(raster)) {
+				// one bit per pixel in bytes, leftmost pixel in the highest bit
+				MultiPixelPackedSampleModel packed = (MultiPixelPackedSampleModel)sampleModel;
+				byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+				int bytesPerRow = (imgWidth + 7) >>> 3;
+				for (int y = 0; y < imgHeight; ++y) {
+					Arrays.fill(bits, 0);
+					int start = raster.getDataBuffer().getOffset() + packed.getOffset(0, y);
+					for (int i = 0; i < bytesPerRow; ++i) {
+						bits[i >>> 3] |= (long)REVERSED_BYTES[data[start + i] & 0xFF] << ((i & 7) * 8);
+					}
+					// the bits are index 1, turn them into black
+					for (int w = 0; w < bits.length; ++w) {
+						if (blackIndex[0]) bits[w] = blackIndex[1] ? -1L : ~bits[w];
+						else if (!blackIndex[1]) bits[w] = 0;
+					}
+					bits[bits.length - 1] &= tailMask;
+					orRow(bits, offsetX, offsetY + y);
+				}
+			} else {
+				int[] samples = new int[imgWidth];
+				for (int y = 0; y < imgHeight; ++y) {
+					Arrays.fill(bits, 0);
+					raster.getSamples(0, y, imgWidth, 1, 0, samples);
+					for (int x = 0; x < imgWidth; ++x) {
+						if (blackIndex[samples[x]]) bits[x >>> 6] |= 1L << x;
+					}
+					orRow(bits, offsetX, offsetY + y);
+				}
+			}
+		} else {
+			int[] rgbRow = new int[imgWidth];
+			for (int y = 0; y < imgHeight; ++y) {
+				Arrays.fill(bits, 0);
+				img.getRGB(0, y, imgWidth, 1, rgbRow, 0, imgWidth);
+				for (int x = 0; x < imgWidth; ++x) {
+					if (isBlack.test(rgbRow[x])) bits[x >>> 6] |= 1L << x;
+				}
+				orRow(bits, offsetX, offsetY + y);
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the raster has 1 bit per pixel, packed into bytes that start at a whole byte in every row
+	 */
+	private static boolean isPackedBits(WritableRaster raster) {
+		if (!(raster.getSampleModel() instanceof MultiPixelPackedSampleModel)) return false;
+		if (!(raster.getDataBuffer() instanceof DataBufferByte)) return false;
+		MultiPixelPackedSampleModel packed = (MultiPixelPackedSampleModel)raster.getSampleModel();
+		return packed.getPixelBitStride() == 1 && packed.getDataBitOffset() % 8 == 0
+				&& raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+	}
+
+	/**
+	 * ORs the bits of an image row into row y, starting at column offsetX
+	 */
+	private void orRow(long[] bits, int offsetX, int y) {
+		long[] row = rows[y];
+		int firstWord = offsetX >>> 6;
+		int shift = offsetX & 63;
+		for (int i = 0; i < bits.length; ++i) {
+			long word = bits[i];
+			if (word == 0) continue;
+			row[firstWord + i] |= word << shift;
+			if (shift != 0 && firstWord + i + 1 < row.length) row[firstWord + i + 1] |= word >>> (64 - shift);
+		}
+	}
+
+	// every byte with its bits in reverse order
+	private static final int[] REVERSED_BYTES = new int[256];
+	static {
+		for (int i = 0; i < 256; ++i) REVERSED_BYTES[i] = Integer.reverse(i) >>> 24;
+	}
+
+	/**
+	 * Converts the share into a TYPE_INT_ARGB image with black and fully transparent pixels
+	 * @return The image
+	 */
+	public BufferedImage toImage() {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		// a new image has no offsets, so the pixel at x, y is at y * width + x
+		int[] data = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		for (int y = 0, offset = 0; y < height; ++y, offset += width) {
+			long[] row = rows[y];
+			for (int x = 0; x < width; ++x) {
+				if ((row[x >>> 6] & (1L << x)) != 0) data[offset + x] = BLACK;
+			}
+		}
+		return img;
+	}
+}
@@ -0,0 +1,239 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+
+/**
+ * A colour share: the cyan, magenta and yellow ink of a share, each a BitShare of its own. Every plane is encrypted
+ * with the 2x2 scheme of Crypting on its own, so stacking a colour key and its colour encrypted image (or the
+ * overlay of their planes) reveals the dithered colour source. As an image, each pixel has the colour of the
+ * inks it carries (black if it has all three) and is transparent without ink. Only the bit planes are kept in
+ * memory, images are 8 colour palette images with a byte per pixel.
+ */
+public class ColorShares {
+	/** index of the planes */
+	public static final int CYAN = 0, MAGENTA = 1, YELLOW = 2;
+	private static final int PLANES = 3;
+
+	// the colour of every combination of inks, bit i set for ink of plane i. no ink is transparent.
+	private static final IndexColorModel PALETTE;
+	static {
+		byte[] r = new byte[8];
+		byte[] g = new byte[8];
+		byte[] b = new byte[8];
+		byte[] a = new byte[8];
+		for (int inks = 0; inks < 8; ++inks) {
+			r[inks] = (byte)((inks & (1 << CYAN)) != 0 ? 0 : 255);
+			g[inks] = (byte)((inks & (1 << MAGENTA)) != 0 ? 0 : 255);
+			b[inks] = (byte)((inks & (1 << YELLOW)) != 0 ? 0 : 255);
+			a[inks] = (byte)(inks == 0 ? 0 : 255);
+		}
+		PALETTE = new IndexColorModel(3, 8, r, g, b, a);
+	}
+
+	private final BitShare[] planes;
+
+	/**
+	 * @param cyan The cyan plane
+	 * @param magenta The magenta plane
+	 * @param yellow The yellow plane
+	 * @throws IllegalArgumentException If the planes aren't of the same size
+	 */
+	public ColorShares(BitShare cyan, BitShare magenta, BitShare yellow) {
+		this.planes = new BitShare[] {cyan, magenta, yellow};
+		for (BitShare plane : planes) {
+			if (plane.getWidth() != cyan.getWidth() || plane.getHeight() != cyan.getHeight()) {
+				throw new IllegalArgumentException("Planes of different sizes");
+			}
+		}
+	}
+
+	private ColorShares(BitShare[] planes) {
+		this(planes[CYAN], planes[MAGENTA], planes[YELLOW]);
+	}
+
+	/**
+	 * @param plane CYAN, MAGENTA or YELLOW
+	 * @return The plane, black where it has ink
+	 */
+	public BitShare getPlane(int plane) {
+		return planes[plane];
+	}
+
+	public int getWidth() {
+		return planes[CYAN].getWidth();
+	}
+
+	public int getHeight() {
+		return planes[CYAN].getHeight();
+	}
+
+	/**
+	 * Splits a colour image into its dithered ink planes, all three at once
+	 * @param img The image, transparent pixels get no ink
+	 * @param method How the planes are dithered, see Halftone
+	 * @return The planes, as large as the image
+	 */
+	public static ColorShares halftone(BufferedImage img, Halftone.Method method) {
+		// an ink plane is dark where its complementary channel is
+		IntUnaryOperator[] channels = {iRgb -> (iRgb >> 16) & 0xFF, iRgb -> (iRgb >> 8) & 0xFF, iRgb -> iRgb & 0xFF};
+		BitShare[] planes = new BitShare[PLANES];
+		IntStream.range(0, PLANES).parallel().forEach(plane -> {
+			planes[plane] = new BitShare(img.getWidth(), img.getHeight());
+			new Halftone(method, img.getWidth(), channels[plane]).draw(planes[plane], img, 0, 0);
+		});
+		return new ColorShares(planes);
+	}
+
+	/**
+	 * Generates a colour key for an image and encrypts it, like KeyGenNEncryptFrame does in b/w. The planes are
+	 * processed concurrently, each with a key from generateKeyParallel.
+	 * @param img The colour image
+	 * @param method How the planes are dithered, see Halftone
+	 * @param progress Receives the rows of the keys generated (three times the height of the image)
+	 * @return The key and the encrypted image, twice as wide and tall as the image
+	 */
+	public static ColorShares[] generateKeyAndEncrypt(BufferedImage img, Halftone.Method method, Progress progress) {
+		ColorShares src = halftone(img, method);
+		progress.begin((long)PLANES * img.getHeight());
+		// the planes report to the same progress, only the total above counts
+		Progress rows = new Progress() {
+			@Override
+			public void begin(long rows) {
+			}
+
+			@Override
+			public void rowsDone(int rows) {
+				progress.rowsDone(rows);
+			}
+		};
+		BitShare[] keys = new BitShare[PLANES];
+		BitShare[] encs = new BitShare[PLANES];
+		IntStream.range(0, PLANES).parallel().forEach(plane -> {
+			keys[plane] = Crypting.generateKeyParallel(new BitShare(img.getWidth(), img.getHeight()), rows);
+			encs[plane] = Crypting.encryptImage(keys[plane], src.planes[plane]);
+		});
+		return new ColorShares[] {new ColorShares(keys), new ColorShares(encs)};
+	}
+
+	/**
+	 * Encrypts a colour image with an existing colour key
+	 * @param key The key
+	 * @param img The colour image, half as wide and tall as the key
+	 * @param method How the planes are dithered, see Halftone
+	 * @return The encrypted image or null if the sizes don't fit
+	 */
+	public static ColorShares encrypt(ColorShares key, BufferedImage img, Halftone.Method method) {
+		if (key == null || img == null) return null;
+		if (img.getWidth() * 2 != key.getWidth() || img.getHeight() * 2 != key.getHeight()) return null;
+		ColorShares src = halftone(img, method);
+		return combine(plane -> Crypting.encryptImage(key.planes[plane], src.planes[plane]));
+	}
+
+	/**
+	 * Stacks a colour key and its encrypted image, like putting the printed transparencies on top of each other
+	 * @return The overlay or null if the sizes differ
+	 */
+	public static ColorShares overlay(ColorShares key, ColorShares enc) {
+		if (key == null || enc == null) return null;
+		return combine(plane -> Crypting.overlayImages(key.planes[plane], enc.planes[plane]));
+	}
+
+	/**
+	 * Decrypts a colour encrypted image with its key, plane by plane like Crypting.decryptImage(BitShare, BitShare)
+	 * @return The clean (dithered) image, half as wide and tall as the shares, or null if the sizes differ
+	 */
+	public static ColorShares decrypt(ColorShares key, ColorShares enc) {
+		if (key == null || enc == null) return null;
+		return combine(plane -> Crypting.decryptImage(key.planes[plane], enc.planes[plane]));
+	}
+
+	/**
+	 * Runs an operation on all planes concurrently
+	 * @return The results as colour share or null if the operation returned null for any plane
+	 */
+	private static ColorShares combine(IntFunction<BitShare> operation) {
+		BitShare[] planes = new BitShare[PLANES];
+		IntStream.range(0, PLANES).parallel().forEach(plane -> planes[plane] = operation.apply(plane));
+		for (BitShare plane : planes) {
+			if (plane == null) return null;
+		}
+		return new ColorShares(planes);
+	}
+
+	/**
+	 * Reads a colour share back from an image like toImage() makes it: a pixel has the ink of every channel
+	 * that is at most half bright, transparent pixels have none
+	 * @param img The image
+	 * @return The colour share
+	 */
+	public static ColorShares fromImage(BufferedImage img) {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		BitShare[] planes = new BitShare[PLANES];
+		for (int plane = 0; plane < PLANES; ++plane) planes[plane] = new BitShare(width, height);
+
+		// palette images are looked up by index, e.g. those written by toImage()
+		int[] inksOfIndex = null;
+		if (img.getColorModel() instanceof IndexColorModel) {
+			IndexColorModel palette = (IndexColorModel)img.getColorModel();
+			inksOfIndex = new int[1 << img.getSampleModel().getSampleSize(0)];
+			for (int i = 0; i < palette.getMapSize() && i < inksOfIndex.length; ++i) inksOfIndex[i] = inksOf(palette.getRGB(i));
+		}
+		int[] inksOfIndexFinal = inksOfIndex;
+
+		Raster raster = img.getRaster();
+		IntStream.range(0, height).parallel().forEach(y -> {
+			int[] pixels = new int[width];
+			if (inksOfIndexFinal != null) {
+				raster.getSamples(0, y, width, 1, 0, pixels);
+				for (int x = 0; x < width; ++x) pixels[x] = inksOfIndexFinal[pixels[x]];
+			} else {
+				img.getRGB(0, y, width, 1, pixels, 0, width);
+				for (int x = 0; x < width; ++x) pixels[x] = inksOf(pixels[x]);
+			}
+			for (int plane = 0; plane < PLANES; ++plane) {
+				long[] row = planes[plane].getRow(y);
+				for (int x = 0; x < width; ++x) row[x >>> 6] |= (long)((pixels[x] >>> plane) & 1) << x;
+			}
+		});
+		return new ColorShares(planes);
+	}
+
+	/**
+	 * @return The inks of a pixel, bit i set for ink of plane i
+	 */
+	private static int inksOf(int iRgb) {
+		if (iRgb >>> 24 == 0) return 0;
+		int inks = 0;
+		if (((iRgb >> 16) & 0xFF) < 128) inks |= 1 << CYAN;
+		if (((iRgb >> 8) & 0xFF) < 128) inks |= 1 << MAGENTA;
+		if ((iRgb & 0xFF) < 128) inks |= 1 << YELLOW;
+		return inks;
+	}
+
+	/**
+	 * @return An 8 colour palette image of the share, one byte per pixel
+	 */
+	public BufferedImage toImage() {
+		int width = getWidth();
+		int height = getHeight();
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+		byte[] data = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+		IntStream.range(0, height).parallel().forEach(y -> {
+			long[] cyan = planes[CYAN].getRow(y);
+			long[] magenta = planes[MAGENTA].getRow(y);
+			long[] yellow = planes[YELLOW].getRow(y);
+			int offset = y * width;
+			for (int x = 0; x < width; ++x) {
+				int w = x >>> 6;
+				data[offset + x] = (byte)(((cyan[w] >>> x) & 1) << CYAN | ((magenta[w] >>> x) & 1) << MAGENTA | ((yellow[w] >>> x) & 1) << YELLOW);
+			}
+		});
+		return img;
+	}
+}
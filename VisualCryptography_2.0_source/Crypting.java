@@ -1,12 +1,16 @@
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 import javax.imageio.ImageIO;
 
@@ -19,13 +23,7 @@ public class Crypting {
 	 * @return The key as a BufferedImage
 	 */
 	public static BufferedImage generateKey(int width, int height) {
-		BufferedImage key = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D keyGraphics = key.createGraphics();
-		keyGraphics.setColor(new Color(255, 255, 255, 0)); // fully transparent white
-		keyGraphics.fillRect(0, 0, width, height);
-		keyGraphics.dispose();
-		
-		return generateKey(key);
+		return generateKeyParallel(width, height);
 	}
 	
 	/**
@@ -36,6 +34,10 @@ public class Crypting {
 	 * @return The key as a BufferedImage
 	 */
 	public static BufferedImage generateKey(BufferedImage steganoThis) {
+		return CryptingMetrics.time(METRICS_GENERATE_KEY, 4 * CryptingMetrics.pixels(steganoThis), () -> doGenerateKey(steganoThis));
+	}
+	
+	private static BufferedImage doGenerateKey(BufferedImage steganoThis) {
 		int width = steganoThis.getWidth() * 2;
 		int height = steganoThis.getHeight() * 2;
 			
@@ -50,9 +52,7 @@ public class Crypting {
 		// fill it with the random key structure
 		keyGraphics.setColor(new Color(0, 0, 0, 255));
 		
-		// get securerandom. on linux, this uses NativePRNG (e.g. /dev/urandom), on
-		// windows, it uses SHA1PRNG
-		SecureRandom secureRandom = new SecureRandom();
+		ShareRandom random = ShareRandom.newSecure();
 		
 		// each 2x2-pixel-pack has 2 randomly set pixels
 		for (int y = 0; y < height; y += 2) {
@@ -72,10 +72,10 @@ public class Crypting {
 				// -----
 				// 2 | 3
 				if (whitePixel) {
-					// determine the two pixels
-					int px1 = secureRandom.nextInt(4);
-					int px2 = secureRandom.nextInt(4);
-					while (px1 == px2) px2 = secureRandom.nextInt(4);
+					// determine the two pixels, one of the 6 blocks with two of them
+					int block = WHITE_BLOCKS[random.nextInt(WHITE_BLOCKS.length)];
+					int px1 = Integer.numberOfTrailingZeros(block);
+					int px2 = 31 - Integer.numberOfLeadingZeros(block);
 					
 					// determine the coordinates of them
 					int px1x = (px1 < 2) ? px1 : px1 - 2;
@@ -88,7 +88,7 @@ public class Crypting {
 					keyGraphics.fillRect(x + px2x, y + px2y, 1, 1);
 				} else {
 					// determine the pixel to stay white
-					int px = secureRandom.nextInt(4);
+					int px = random.nextInt(4);
 					
 					// determine cols, rows to be colored
 					int rowBlack = px < 2 ? 1 : 0;
@@ -112,62 +112,162 @@ public class Crypting {
 	 * @return The key file as an image or null if it isn't a key file.  Any white pixels the image might have had are converted to transparent ones.
 	 */
 	public static BufferedImage loadAndCheckEncrFile(File keyFile) {
-		if (keyFile == null) return null;
-		BufferedImage imgKey = null;
-		try {
-			imgKey = ImageIO.read(keyFile);
-		} catch (Exception e) {
-			return null;
-		}
-		
-		// check if width + height are divisable by 2
-		if (imgKey.getWidth() % 2 != 0) return null;
-		if (imgKey.getHeight() % 2 != 0) return null;
+		return loadAndCheckEncrFile(keyFile, true);
+	}
+	
+	/**
+	 * Loads a key or encrypted file in Image and checks it (roughly), see loadAndCheckEncrFile(File).
+	 * @param keyFile
+	 * @param earlyReject true to first check a random sample of blocks and only convert and count the whole image
+	 * if the sample looks like a share. A valid share is wrongly rejected with a probability of less than
+	 * EARLY_REJECT_ERROR.
+	 * @return The key file as an image or null if it isn't a key file.  Any white pixels the image might have had are converted to transparent ones.
+	 */
+	public static BufferedImage loadAndCheckEncrFile(File keyFile, boolean earlyReject) {
+		return CryptingMetrics.time(METRICS_LOAD_ENCR_FILE, 0, () -> doLoadAndCheckEncrFile(keyFile, earlyReject));
+	}
+	
+	private static BufferedImage doLoadAndCheckEncrFile(File keyFile, boolean earlyReject) {
+		BufferedImage imgKey = readEncrFile(keyFile, earlyReject);
+		if (imgKey == null) return null;
+		CryptingMetrics.addPixels(CryptingMetrics.pixels(imgKey));
 		
-		// convert image to ARGB colorspace (if it isn't allready)
-		if (imgKey.getType() != BufferedImage.TYPE_INT_ARGB) {
-			BufferedImage raw_image = imgKey;
-			imgKey = new BufferedImage(raw_image.getWidth(), raw_image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-			new ColorConvertOp(null).filter(raw_image, imgKey);
+		// black & white palette images (e.g. 1-bit pngs) are decoded straight from their indices
+		if (isBlackAndWhitePalette(imgKey)) {
+			BitShare share = BitShare.fromImage(imgKey);
+			return hasShareRatio(share) ? share.toImage() : null;
 		}
 		
-		// check if image contains only black + transparent or white pixels
-		// also count those
-		long lAmountOfTotalPixels = 0;
+		// convert image to ARGB colorspace (if it isn't allready), then turn white pixels transparent
+		// and count the transparent ones in one pass over the rows
+		int width = imgKey.getWidth();
+		int height = imgKey.getHeight();
+		BufferedImage imgArgb = toIntArgb(imgKey);
+		int[] row = new int[width];
 		long lAmountOfWhitePixels = 0;
-		
-		for(int i = 0; i < imgKey.getHeight(); i++) {
-			for(int j = 0; j < imgKey.getWidth(); j++) {
-				int iRgb = imgKey.getRGB(j, i);
-				
+		for (int y = 0; y < height; ++y) {
+			imgArgb.getRaster().getDataElements(0, y, width, 1, row);
+			for (int x = 0; x < width; ++x) {
 				// white to transparent
-				if(iRgb == Color.WHITE.getRGB()) {
-					imgKey.setRGB(j, i, 0x00FFFFFF);
-					iRgb = imgKey.getRGB(j, i);
-				}
-				
+				if (row[x] == Color.WHITE.getRGB()) row[x] = 0x00FFFFFF;
 				// only count transparent pixels as white, everything else as black
-				if(iRgb>>>24 == 0) {
-					++lAmountOfTotalPixels;
-					++lAmountOfWhitePixels;
-				} else {
-					++lAmountOfTotalPixels;
-				}
-				
+				if (row[x]>>>24 == 0) ++lAmountOfWhitePixels;
 			}
+			imgArgb.getRaster().setDataElements(0, y, width, 1, row);
 		}
 		
-		
 		//if (lAmountOfTotalPixels / lAmountOfBlackPixels != 2) return null;
 		// since stegano, if all pixels of the stegano file were black, at least a quart would have to be white
 		// if all pixels of the stegano file where white, at least half of it would have to be white
 		// so, total/black must have to fall between 2 and 4, inclusive
-		double whites = (double)lAmountOfTotalPixels / lAmountOfWhitePixels;
+		double whites = (double)width * height / lAmountOfWhitePixels;
 		if (whites < 2 || whites > 4) return null;
 		
+		return imgArgb;
+	}
+	
+	/**
+	 * Loads a key or encrypted file straight into a share and checks it like loadAndCheckEncrFile(File). Palette images
+	 * (e.g. 1-bit pngs) never get converted to ARGB, other images are read pixel by pixel.
+	 * @param keyFile
+	 * @return The share or null if it isn't a key file. Transparent and white pixels are transparent, all others black.
+	 */
+	public static BitShare loadAndCheckEncrShare(File keyFile) {
+		return CryptingMetrics.time(METRICS_LOAD_ENCR_SHARE, 0, () -> doLoadAndCheckEncrShare(keyFile));
+	}
+	
+	private static BitShare doLoadAndCheckEncrShare(File keyFile) {
+		BufferedImage imgKey = readEncrFile(keyFile, true);
+		if (imgKey == null) return null;
+		CryptingMetrics.addPixels(CryptingMetrics.pixels(imgKey));
+		BitShare share = BitShare.fromImage(imgKey);
+		return hasShareRatio(share) ? share : null;
+	}
+	
+	/**
+	 * Reads a key or encrypted file and does the checks that don't need all of its pixels
+	 * @return The image as read or null if it can't be a key file
+	 */
+	private static BufferedImage readEncrFile(File keyFile, boolean earlyReject) {
+		if (keyFile == null) return null;
+		BufferedImage imgKey = null;
+		try {
+			imgKey = ImageIO.read(keyFile);
+		} catch (Exception e) {
+			return null;
+		}
+		if (imgKey == null) return null;
+		
+		// check if width + height are divisable by 2
+		if (imgKey.getWidth() % 2 != 0) return null;
+		if (imgKey.getHeight() % 2 != 0) return null;
+		
+		if (earlyReject && !isShareSample(imgKey)) return null;
 		return imgKey;
 	}
 	
+	/**
+	 * @return Whether 1/2 to 1/4 of the share are white, see loadAndCheckEncrFile
+	 */
+	private static boolean hasShareRatio(BitShare share) {
+		long total = (long)share.getWidth() * share.getHeight();
+		double whites = (double)total / (total - share.countBlack());
+		return whites >= 2 && whites <= 4;
+	}
+	
+	/**
+	 * @return Whether the image has a palette of only transparent, white and black colors, so that it can be turned
+	 * into a share and back without losing anything
+	 */
+	private static boolean isBlackAndWhitePalette(BufferedImage img) {
+		if (!(img.getColorModel() instanceof IndexColorModel)) return false;
+		IndexColorModel palette = (IndexColorModel)img.getColorModel();
+		for (int i = 0; i < palette.getMapSize(); ++i) {
+			int iRgb = palette.getRGB(i);
+			if (!(iRgb>>>24 == 0 || iRgb == Color.WHITE.getRGB() || iRgb == Color.BLACK.getRGB())) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Converts an image to TYPE_INT_ARGB with a plain copy of the pixels (the native blit loops are much faster than
+	 * ColorConvertOp or getRGB)
+	 * @return The image itself if it already is TYPE_INT_ARGB, a converted copy otherwise
+	 */
+	private static BufferedImage toIntArgb(BufferedImage img) {
+		if (img.getType() == BufferedImage.TYPE_INT_ARGB) return img;
+		BufferedImage imgArgb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = imgArgb.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		return imgArgb;
+	}
+	
+	/**
+	 * Checks whether the share of white pixels in a random sample of EARLY_REJECT_BLOCKS 2x2 blocks is close enough
+	 * to the 1/4 to 1/2 loadAndCheckEncrFile requires of the whole image. By Hoeffding's inequality, the sample
+	 * differs from the whole image by more than EARLY_REJECT_MARGIN with a probability of less than EARLY_REJECT_ERROR.
+	 * @return false if the image is certainly no share, true if it might be one (or is too small to sample)
+	 */
+	private static boolean isShareSample(BufferedImage img) {
+		int blocksX = img.getWidth() / 2;
+		int blocksY = img.getHeight() / 2;
+		if ((long)blocksX * blocksY <= EARLY_REJECT_BLOCKS * 4L) return true;
+		
+		Random random = new Random(blocksX * 31L + blocksY);
+		int[] block = new int[4];
+		long whitePixels = 0;
+		for (int i = 0; i < EARLY_REJECT_BLOCKS; ++i) {
+			img.getRGB(random.nextInt(blocksX) * 2, random.nextInt(blocksY) * 2, 2, 2, block, 0, 2);
+			for (int iRgb : block) {
+				if (iRgb>>>24 == 0 || iRgb == Color.WHITE.getRGB()) ++whitePixels;
+			}
+		}
+		double whiteShare = whitePixels / (EARLY_REJECT_BLOCKS * 4.0);
+		return whiteShare >= 0.25 - EARLY_REJECT_MARGIN && whiteShare <= 0.5 + EARLY_REJECT_MARGIN;
+	}
+	
 	/**
 	 * Loads the image to be encrypted. If the image is smaller than the maximum possible size and resize is true, it is resized.
 	 * Also ensures the image is a valid source file (only black and white (or transparent) pixels). 
@@ -179,15 +279,16 @@ public class Crypting {
 	 * @return The (resized) image if it was OK or null. Any white pixels the image might have had are converted to transparent ones.
 	 */
 	public static BufferedImage loadAndCheckSource(File sourceFile, int width, int height, boolean resize) {
-		if (sourceFile == null) return null;
-		BufferedImage imgSrc = null;
-		try {
-			imgSrc = ImageIO.read(sourceFile);
-		} catch (Exception e) {
-			return null;
-		}
+		return CryptingMetrics.time(METRICS_LOAD_SOURCE, 0, () -> doLoadAndCheckSource(sourceFile, width, height, resize));
+	}
+	
+	private static BufferedImage doLoadAndCheckSource(File sourceFile, int width, int height, boolean resize) {
+		BufferedImage imgSrc = readSource(sourceFile, width, height, resize);
+		if (imgSrc == null) return null;
+		CryptingMetrics.addPixels(CryptingMetrics.pixels(imgSrc));
 		
-		if (resize && (imgSrc.getWidth() > width || imgSrc.getHeight() > height)) return null;
+		// palette images (e.g. 1-bit pngs) are decoded straight from their indices
+		if (imgSrc.getColorModel() instanceof IndexColorModel) return toSourceShare(imgSrc, width, height, resize, Halftone.Method.THRESHOLD).toImage();
 		
 		// convert image to ARGB colorspace (if it isn't allready)
 		if (imgSrc.getType() != BufferedImage.TYPE_INT_ARGB) {
@@ -210,18 +311,7 @@ public class Crypting {
 				
 				// check if pixel is either fully transparent or black
 				if(!(iRgb>>>24 == 0 || iRgb == Color.BLACK.getRGB())) {
-					int r = (iRgb & 0x00FF0000)>>16;
-					int g = (iRgb & 0x0000FF00)>>8;
-					int b = iRgb & 0x000000FF;
-					// brightness by euclidian distance)
-					double brightness = (0.2126 * r) + (0.7152 * g) + (0.0722 * b);
-					if (brightness > (255/2)) {
-						// transparent
-						imgSrc.setRGB(j, i, 0x00FFFFFF);
-					} else {
-						// black
-						imgSrc.setRGB(j, i, Color.BLACK.getRGB());
-					}
+					imgSrc.setRGB(j, i, isBlackSourcePixel(iRgb) ? Color.BLACK.getRGB() : 0x00FFFFFF);
 				}
 				
 			}
@@ -239,6 +329,94 @@ public class Crypting {
 		return imgSrcRes;
 	}
 	
+	/**
+	 * Loads the image to be encrypted like loadAndCheckSource(File, int, int, boolean), converting it to b/w with
+	 * the given halftoning method instead of the brightness threshold, e.g. for photos
+	 * @param dither How grey pixels become black or white
+	 */
+	public static BufferedImage loadAndCheckSource(File sourceFile, int width, int height, boolean resize, Halftone.Method dither) {
+		if (dither == Halftone.Method.THRESHOLD) return loadAndCheckSource(sourceFile, width, height, resize);
+		BitShare share = loadAndCheckSourceShare(sourceFile, width, height, resize, dither);
+		return share == null ? null : share.toImage();
+	}
+	
+	/**
+	 * Loads the image to be encrypted straight into a share, see loadAndCheckSource. Palette images (e.g. 1-bit pngs)
+	 * never get converted to ARGB, other images are read pixel by pixel.
+	 * @param sourceFile The image to be encrypted
+	 * @param width The width of the key to be used / 2
+	 * @param height The height of the key to be used / 2
+	 * @param resize true if image should be resized
+	 * @return The (resized) share or null if the image wasn't OK
+	 */
+	public static BitShare loadAndCheckSourceShare(File sourceFile, int width, int height, boolean resize) {
+		return loadAndCheckSourceShare(sourceFile, width, height, resize, Halftone.Method.THRESHOLD);
+	}
+	
+	/**
+	 * Loads the image to be encrypted straight into a share like loadAndCheckSourceShare(File, int, int, boolean),
+	 * converting it to b/w with the given halftoning method
+	 * @param dither How grey pixels become black or white
+	 */
+	public static BitShare loadAndCheckSourceShare(File sourceFile, int width, int height, boolean resize, Halftone.Method dither) {
+		return CryptingMetrics.time(METRICS_LOAD_SOURCE_SHARE, 0, () -> doLoadAndCheckSourceShare(sourceFile, width, height, resize, dither));
+	}
+	
+	private static BitShare doLoadAndCheckSourceShare(File sourceFile, int width, int height, boolean resize, Halftone.Method dither) {
+		BufferedImage imgSrc = readSource(sourceFile, width, height, resize);
+		if (imgSrc == null) return null;
+		CryptingMetrics.addPixels(CryptingMetrics.pixels(imgSrc));
+		return toSourceShare(imgSrc, width, height, resize, dither);
+	}
+	
+	/**
+	 * Reads the image to be encrypted and checks its size
+	 * @return The image as read or null if it can't be read or is too large
+	 */
+	private static BufferedImage readSource(File sourceFile, int width, int height, boolean resize) {
+		if (sourceFile == null) return null;
+		BufferedImage imgSrc = null;
+		try {
+			imgSrc = ImageIO.read(sourceFile);
+		} catch (Exception e) {
+			return null;
+		}
+		if (imgSrc == null) return null;
+		
+		if (resize && (imgSrc.getWidth() > width || imgSrc.getHeight() > height)) return null;
+		return imgSrc;
+	}
+	
+	/**
+	 * Converts the image to be encrypted into a share (see isBlackSourcePixel for THRESHOLD), centered if it's resized
+	 */
+	private static BitShare toSourceShare(BufferedImage imgSrc, int width, int height, boolean resize, Halftone.Method dither) {
+		if (!resize) {
+			width = imgSrc.getWidth();
+			height = imgSrc.getHeight();
+		}
+		BitShare share = new BitShare(width, height);
+		new Halftone(dither, imgSrc.getWidth()).draw(share, imgSrc, (width - imgSrc.getWidth()) / 2, (height - imgSrc.getHeight()) / 2);
+		return share;
+	}
+	
+	/**
+	 * Determines whether a pixel of an image to be encrypted counts as black, the way loadAndCheckSource converts it.
+	 * Transparent and white pixels are white, other colors are black if their brightness is at most half.
+	 * @param iRgb The ARGB value of the pixel
+	 * @return true if the pixel is encrypted as black
+	 */
+	public static boolean isBlackSourcePixel(int iRgb) {
+		if (iRgb>>>24 == 0 || iRgb == Color.WHITE.getRGB()) return false;
+		if (iRgb == Color.BLACK.getRGB()) return true;
+		int r = (iRgb & 0x00FF0000)>>16;
+		int g = (iRgb & 0x0000FF00)>>8;
+		int b = iRgb & 0x000000FF;
+		// brightness by euclidian distance)
+		double brightness = (0.2126 * r) + (0.7152 * g) + (0.0722 * b);
+		return !(brightness > (255/2));
+	}
+	
 	/**
 	 * Encrypts an image. It is assumed that the source image is the maximum possible size (width and height half of that of the key).
 	 * Validity of source and key image are not checked, see loadAndCheckKey and loadAndCheckSource for that.
@@ -247,52 +425,73 @@ public class Crypting {
 	 * @return The encrypted image or null if an error occured
 	 */
 	public static BufferedImage encryptImage(BufferedImage imgKey, BufferedImage imgSrc) {
+		return encryptImage(imgKey, imgSrc, Progress.NONE);
+	}
+	
+	/**
+	 * Encrypts an image like encryptImage(BufferedImage, BufferedImage), reporting the source rows done
+	 * @param progress Receives the progress, may cancel the encryption
+	 */
+	public static BufferedImage encryptImage(BufferedImage imgKey, BufferedImage imgSrc, Progress progress) {
+		return CryptingMetrics.time(METRICS_ENCRYPT_IMAGE, CryptingMetrics.pixels(imgKey), () -> doEncryptImage(imgKey, imgSrc, progress));
+	}
+	
+	private static BufferedImage doEncryptImage(BufferedImage imgKey, BufferedImage imgSrc, Progress progress) {
 		if (imgKey == null || imgSrc == null) return null;
 		// check for key/source file match
 		if (imgSrc.getWidth() != imgKey.getWidth() / 2 || imgSrc.getHeight() != imgKey.getHeight() / 2) return null;
 		
-		// resize the source to the size of the key
-		BufferedImage imgSrcRes =  new BufferedImage(imgKey.getWidth(), imgKey.getHeight(), BufferedImage.TYPE_INT_ARGB);
-		Graphics2D g = imgSrcRes.createGraphics();
-		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-		g.drawImage(imgSrc, 0, 0, imgKey.getWidth(), imgKey.getHeight(), 0, 0, imgSrc.getWidth(), imgSrc.getHeight(), null);
-		g.dispose();
+		int width = imgKey.getWidth();
+		int srcWidth = imgSrc.getWidth();
 		
-		BufferedImage imgEncr =  new BufferedImage(imgKey.getWidth(), imgKey.getHeight(), BufferedImage.TYPE_INT_ARGB);
-		Graphics2D encrGraphics = imgEncr.createGraphics();
+		// a new TYPE_INT_ARGB image is fully transparent and has no offsets, so the encrypted pixels can be
+		// written straight into its data buffer
+		BufferedImage imgEncr =  new BufferedImage(width, imgKey.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		int[] encr = ((DataBufferInt)imgEncr.getRaster().getDataBuffer()).getData();
 		
-		// fill it with a fully transparent "white" (should allready be this way with TYPE_INT_ARGB)
-		encrGraphics.setColor(new Color(255, 255, 255, 0));
-		encrGraphics.fillRect(0, 0, imgEncr.getWidth(), imgEncr.getHeight());
-		
-		// encrypt
-		encrGraphics.setColor(new Color(0, 0, 0, 255));
-		
-		// each 2x2-pixel-pack has 2 pixels to set
-		for (int y = 0; y < imgEncr.getHeight(); y += 2) {
-			for (int x = 0; x < imgEncr.getWidth(); x += 2) {
-				// because 1 black pixel of the original image is now a square of 4 black pixels,
-				// only the first pixel has to be checked
-				if (imgSrcRes.getRGB(x, y) == Color.BLACK.getRGB()) {
+		int[] srcRow = new int[srcWidth];
+		int[] keyRows = new int[width * 2];
+		
+		progress.begin(imgSrc.getHeight());
+		// each source row covers two key rows, each source pixel a 2x2 block of them
+		for (int ySrc = 0; ySrc < imgSrc.getHeight(); ++ySrc) {
+			readArgbRows(imgSrc, ySrc, 1, srcRow);
+			readArgbRows(imgKey, ySrc * 2, 2, keyRows);
+			int offset = ySrc * 2 * width;
+			for (int i = 0; i < keyRows.length; ++i) {
+				int x = i < width ? i : i - width;
+				int iKeyRgb = keyRows[i];
+				if (srcRow[x >> 1] == BitShare.BLACK) {
 					// write the two pixels to complete the block together with the key
-					if (imgKey.getRGB(x, y)>>>24 == 0) encrGraphics.fillRect(x, y, 1, 1);
-					if (imgKey.getRGB(x + 1, y)>>>24 == 0) encrGraphics.fillRect(x + 1, y, 1, 1);
-					if (imgKey.getRGB(x, y + 1)>>>24 == 0) encrGraphics.fillRect(x, y + 1, 1, 1);
-					if (imgKey.getRGB(x + 1, y + 1)>>>24 == 0) encrGraphics.fillRect(x + 1, y + 1, 1, 1);
+					if (iKeyRgb>>>24 == 0) encr[offset + i] = BitShare.BLACK;
 				} else {
 					// write the two pixels at the same position in the key
-					if (imgKey.getRGB(x, y) == Color.BLACK.getRGB()) encrGraphics.fillRect(x, y, 1, 1);
-					if (imgKey.getRGB(x + 1, y) == Color.BLACK.getRGB()) encrGraphics.fillRect(x + 1, y, 1, 1);
-					if (imgKey.getRGB(x, y + 1) == Color.BLACK.getRGB()) encrGraphics.fillRect(x, y + 1, 1, 1);
-					if (imgKey.getRGB(x + 1, y + 1) == Color.BLACK.getRGB()) encrGraphics.fillRect(x + 1, y + 1, 1, 1);
+					if (iKeyRgb == BitShare.BLACK) encr[offset + i] = BitShare.BLACK;
 				}
 			}
+			progress.rowsDone(1);
 		}
-		encrGraphics.dispose();
 		
 		return imgEncr;
 	}
 	
+	/**
+	 * Reads whole rows of an image as ARGB values. TYPE_INT_ARGB images are copied straight from their raster,
+	 * everything else goes through getRGB.
+	 * @param img The image to read from
+	 * @param y The first row to read
+	 * @param rows The amount of rows to read
+	 * @param buffer Receives the pixels, must hold at least rows * width values
+	 */
+	private static void readArgbRows(BufferedImage img, int y, int rows, int[] buffer) {
+		int width = img.getWidth();
+		if (img.getType() == BufferedImage.TYPE_INT_ARGB) {
+			img.getRaster().getDataElements(0, y, width, rows, buffer);
+		} else {
+			img.getRGB(0, y, width, rows, buffer, 0, width);
+		}
+	}
+	
 	/**
 	 * Generates an overlay of the key and the encrypted file, therefore producing an unclean, but
 	 * Human readable decryption
@@ -301,6 +500,10 @@ public class Crypting {
 	 * @return The overlay or null if the images are of different size
 	 */
 	public static BufferedImage overlayImages(BufferedImage imgKey, BufferedImage imgEnc) {
+		return CryptingMetrics.time(METRICS_OVERLAY_IMAGES, CryptingMetrics.pixels(imgKey), () -> doOverlayImages(imgKey, imgEnc));
+	}
+	
+	private static BufferedImage doOverlayImages(BufferedImage imgKey, BufferedImage imgEnc) {
 		if (imgKey == null || imgEnc == null || imgKey.getWidth() != imgEnc.getWidth() || imgKey.getHeight() != imgEnc.getHeight()) return null;
 		
 		// copy key to image
@@ -317,13 +520,52 @@ public class Crypting {
 	}
 	
 	/**
-	 * Decrypts an encrypted image
+	 * Decrypts an encrypted image in a single pass over key and encrypted image, without building the overlay
+	 * (use overlayImages if it's needed as well)
 	 * @param imgKey The key file used to encrypt the image
 	 * @param imgEnc The encrypted image
-	 * @return The decrypted picture
+	 * @return The decrypted picture or null if the images are of different or odd size
 	 */
 	public static BufferedImage decryptImage(BufferedImage imgKey, BufferedImage imgEnc) {
-		return decryptImage(overlayImages(imgKey, imgEnc));
+		return decryptImage(imgKey, imgEnc, Progress.NONE);
+	}
+	
+	/**
+	 * Decrypts an encrypted image like decryptImage(BufferedImage, BufferedImage), reporting the decrypted rows done
+	 * @param progress Receives the progress, may cancel the decryption
+	 */
+	public static BufferedImage decryptImage(BufferedImage imgKey, BufferedImage imgEnc, Progress progress) {
+		return CryptingMetrics.time(METRICS_DECRYPT_IMAGE, CryptingMetrics.pixels(imgKey), () -> doDecryptImage(imgKey, imgEnc, progress));
+	}
+	
+	private static BufferedImage doDecryptImage(BufferedImage imgKey, BufferedImage imgEnc, Progress progress) {
+		if (imgKey == null || imgEnc == null || imgKey.getWidth() != imgEnc.getWidth() || imgKey.getHeight() != imgEnc.getHeight()) return null;
+		if (imgKey.getHeight() % 2 != 0 || imgKey.getWidth() % 2 != 0) return null;
+		
+		int width = imgKey.getWidth();
+		BufferedImage imgClean = new BufferedImage(width / 2, imgKey.getHeight() / 2, BufferedImage.TYPE_INT_ARGB);
+		int[] clean = ((DataBufferInt)imgClean.getRaster().getDataBuffer()).getData();
+		int[] keyRows = new int[width * 2];
+		int[] encRows = new int[width * 2];
+		
+		progress.begin(imgClean.getHeight());
+		// a pixel of the overlay is colored if it is in the key or the encrypted image. write all fully colored
+		// 2x2 blocks to the result picture
+		for (int yCln = 0, offset = 0; yCln < imgClean.getHeight(); ++yCln) {
+			readArgbRows(imgKey, yCln * 2, 2, keyRows);
+			readArgbRows(imgEnc, yCln * 2, 2, encRows);
+			for (int x = 0; x < width; x += 2, ++offset) {
+				if ((keyRows[x]>>>24 != 0 || encRows[x]>>>24 != 0) &&
+						(keyRows[x + 1]>>>24 != 0 || encRows[x + 1]>>>24 != 0) &&
+						(keyRows[width + x]>>>24 != 0 || encRows[width + x]>>>24 != 0) &&
+						(keyRows[width + x + 1]>>>24 != 0 || encRows[width + x + 1]>>>24 != 0)) {
+					// the color the overlay would have, the encrypted image is drawn over the key
+					clean[offset] = encRows[x]>>>24 != 0 ? encRows[x] : keyRows[x];
+				}
+			}
+			progress.rowsDone(1);
+		}
+		return imgClean;
 	}
 	
 	/**
@@ -332,37 +574,33 @@ public class Crypting {
 	 * @return The decrypted picture
 	 */
 	public static BufferedImage decryptImage(BufferedImage imgOverlay) {
+		return CryptingMetrics.time(METRICS_DECRYPT_IMAGE, CryptingMetrics.pixels(imgOverlay), () -> doDecryptImage(imgOverlay));
+	}
+	
+	private static BufferedImage doDecryptImage(BufferedImage imgOverlay) {
 		if (imgOverlay == null || imgOverlay.getHeight() % 2 != 0 || imgOverlay.getWidth() % 2 != 0) return null;
 		
-		BufferedImage imgClean = new BufferedImage(imgOverlay.getWidth() / 2, imgOverlay.getHeight() / 2, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D cleanGraphics = imgClean.createGraphics();
-		
-		// fill it with a fully transparent "white" (should allready be this way with TYPE_INT_ARGB)
-		cleanGraphics.setColor(new Color(255, 255, 255, 0));
-		cleanGraphics.fillRect(0, 0, imgClean.getWidth(), imgClean.getHeight());
-		
-		// fill it with the cleaned up picture
-		cleanGraphics.setColor(new Color(0, 0, 0, 255));
+		int width = imgOverlay.getWidth();
+		BufferedImage imgClean = new BufferedImage(width / 2, imgOverlay.getHeight() / 2, BufferedImage.TYPE_INT_ARGB);
+		int[] clean = ((DataBufferInt)imgClean.getRaster().getDataBuffer()).getData();
+		int[] overRows = new int[width * 2];
 		
 		// go through the picture and write all fully colored 2x2 blocks to the result picture
-		for (int yOver = 0, yCln = 0; yOver < imgOverlay.getHeight(); yOver += 2, ++yCln) {
-			for (int xOver = 0, xCln = 0; xOver < imgOverlay.getWidth(); xOver += 2, ++xCln) {
-				int rgbFirstPixel = imgOverlay.getRGB(xOver, yOver);
+		for (int yCln = 0, offset = 0; yCln < imgClean.getHeight(); ++yCln) {
+			readArgbRows(imgOverlay, yCln * 2, 2, overRows);
+			for (int x = 0; x < width; x += 2, ++offset) {
+				int rgbFirstPixel = overRows[x];
 				if (rgbFirstPixel >>>24 != 0 &&
-						imgOverlay.getRGB(xOver + 1, yOver) >>>24 != 0 &&
-						imgOverlay.getRGB(xOver, yOver + 1) >>>24 != 0 &&
-						imgOverlay.getRGB(xOver + 1, yOver + 1) >>>24 != 0) {
-					cleanGraphics.setColor(new Color(rgbFirstPixel, true));
-					cleanGraphics.fillRect(xCln, yCln, 1, 1);
+						overRows[x + 1] >>>24 != 0 &&
+						overRows[width + x] >>>24 != 0 &&
+						overRows[width + x + 1] >>>24 != 0) {
+					clean[offset] = rgbFirstPixel;
 				}
 			}
 		}
-		cleanGraphics.dispose();
 		return imgClean;
 	}
 	
-
-	
 	/**
 	 * Hides an image in two other ones. If the images given are not valid, or they're not all the same size, null is
 	 * returned
@@ -373,111 +611,448 @@ public class Crypting {
 	 * @see http://datagenetics.com/blog/november32013/index.html
 	 */
 	public static BufferedImage[] hideImage(BufferedImage imgFirst, BufferedImage imgSecond, BufferedImage imgToHide) {
+		return hideImage(imgFirst, imgSecond, imgToHide, Progress.NONE);
+	}
+	
+	/**
+	 * Hides an image in two other ones like hideImage(BufferedImage, BufferedImage, BufferedImage), see
+	 * hideImage(BitShare, BitShare, BitShare, Progress) for the progress reported
+	 * @param progress Receives the progress, may cancel hiding
+	 */
+	public static BufferedImage[] hideImage(BufferedImage imgFirst, BufferedImage imgSecond, BufferedImage imgToHide, Progress progress) {
+		return CryptingMetrics.time(METRICS_HIDE_IMAGE, 4 * CryptingMetrics.pixels(imgFirst), () -> doHideImage(imgFirst, imgSecond, imgToHide, progress));
+	}
+	
+	private static BufferedImage[] doHideImage(BufferedImage imgFirst, BufferedImage imgSecond, BufferedImage imgToHide, Progress progress) {
 		if (imgFirst == null || imgSecond == null || imgToHide == null) return null;
-		int width = imgFirst.getWidth();
-		int height = imgFirst.getHeight();
-		if (imgSecond.getWidth() != width || imgToHide.getWidth() != width
-				|| imgSecond.getHeight() != height || imgToHide.getHeight() != height) return null;
+		BitShare[] shares = hideImage(BitShare.fromImage(imgFirst), BitShare.fromImage(imgSecond), BitShare.fromImage(imgToHide), progress);
+		if (shares == null) return null;
+		return new BufferedImage[]{shares[0].toImage(), shares[1].toImage()};
+	}
+	
+	// amount of randomly chosen 2x2 blocks loadAndCheckEncrFile checks before looking at the whole image
+	private static final int EARLY_REJECT_BLOCKS = 4096;
+	// highest probability of rejecting a valid share because of an unlucky sample
+	private static final double EARLY_REJECT_ERROR = 1e-9;
+	// Hoeffding: P(|sample - total| >= t) <= 2 * exp(-2 * n * t^2), solved for t
+	private static final double EARLY_REJECT_MARGIN = Math.sqrt(Math.log(2 / EARLY_REJECT_ERROR) / (2 * EARLY_REJECT_BLOCKS));
+	
+	// 2x2 blocks as 4 bit patterns: bit 0 is the top left, bit 1 the top right, bit 2 the bottom left and
+	// bit 3 the bottom right pixel
+	private static final int[] WHITE_BLOCKS = {0b0011, 0b0101, 0b1001, 0b0110, 0b1010, 0b1100};
+	private static final int[] BLACK_BLOCKS = {0b1110, 0b1101, 0b1011, 0b0111};
+	// all blocks hideImage can choose from, indexed by (block of the first key << 2) | (second image is black << 1)
+	// | (target should be black), see buildHideBlocks()
+	private static final int[][] HIDE_BLOCKS = buildHideBlocks();
+	// source rows per band when generating keys in parallel
+	private static final int KEY_BAND_ROWS = 64;
+	// on linux, this uses NativePRNG (e.g. /dev/urandom), on windows, it uses SHA1PRNG
+	private static final SecureRandom SYSTEM_RANDOM = new SecureRandom();
+	// the row loops of encrypting and decrypting shares, vectorized if possible
+	private static final ShareKernels KERNELS = ShareKernels.load();
+	// what the public methods record, overloads that only differ in their defaults record as the same operation
+	private static final CryptingMetrics.Operation METRICS_GENERATE_KEY = CryptingMetrics.operation("generateKey");
+	private static final CryptingMetrics.Operation METRICS_GENERATE_KEY_SHARE = CryptingMetrics.operation("generateKeyShare");
+	private static final CryptingMetrics.Operation METRICS_LOAD_ENCR_FILE = CryptingMetrics.operation("loadAndCheckEncrFile");
+	private static final CryptingMetrics.Operation METRICS_LOAD_ENCR_SHARE = CryptingMetrics.operation("loadAndCheckEncrShare");
+	private static final CryptingMetrics.Operation METRICS_LOAD_SOURCE = CryptingMetrics.operation("loadAndCheckSource");
+	private static final CryptingMetrics.Operation METRICS_LOAD_SOURCE_SHARE = CryptingMetrics.operation("loadAndCheckSourceShare");
+	private static final CryptingMetrics.Operation METRICS_ENCRYPT_IMAGE = CryptingMetrics.operation("encryptImage");
+	private static final CryptingMetrics.Operation METRICS_ENCRYPT_SHARE = CryptingMetrics.operation("encryptShare");
+	private static final CryptingMetrics.Operation METRICS_OVERLAY_IMAGES = CryptingMetrics.operation("overlayImages");
+	private static final CryptingMetrics.Operation METRICS_OVERLAY_SHARES = CryptingMetrics.operation("overlayShares");
+	private static final CryptingMetrics.Operation METRICS_DECRYPT_IMAGE = CryptingMetrics.operation("decryptImage");
+	private static final CryptingMetrics.Operation METRICS_DECRYPT_SHARE = CryptingMetrics.operation("decryptShare");
+	private static final CryptingMetrics.Operation METRICS_DECRYPT_PREVIEW = CryptingMetrics.operation("decryptPreview");
+	private static final CryptingMetrics.Operation METRICS_HIDE_IMAGE = CryptingMetrics.operation("hideImage");
+	private static final CryptingMetrics.Operation METRICS_HIDE_SHARES = CryptingMetrics.operation("hideShares");
+	
+	/**
+	 * Securely generates a new Key as a BitShare
+	 * @param width The width of the largest encryptable Image (width of key is two times as wide)
+	 * @param height The height of the largest encryptable Image (height of key is two times as tall)
+	 * @return The key
+	 */
+	public static BitShare generateKeyShare(int width, int height) {
+		return generateKey(new BitShare(width, height));
+	}
+	
+	/**
+	 * Securely generates a new Key from the given share, see generateKey(BufferedImage)
+	 * @param steganoThis The share to transform into a key. Fully transparent share for truly random key.
+	 * @return The key, twice as wide and tall as steganoThis
+	 */
+	public static BitShare generateKey(BitShare steganoThis) {
+		return CryptingMetrics.time(METRICS_GENERATE_KEY_SHARE, 4 * CryptingMetrics.pixels(steganoThis), () -> doGenerateKey(steganoThis));
+	}
+	
+	private static BitShare doGenerateKey(BitShare steganoThis) {
+		BitShare key = new BitShare(steganoThis.getWidth() * 2, steganoThis.getHeight() * 2);
 		
-		// generate a key out of the first image
-		BufferedImage keyFirstImg = Crypting.generateKey(imgFirst);
+		generateKeyRows(steganoThis, key, 0, steganoThis.getHeight(), ShareRandom.newSecure());
+		return key;
+	}
+	
+	/**
+	 * Generates a key from the given share with a SHA1PRNG seeded with seed, so that the very same key can be
+	 * generated again (e.g. to write a key band by band twice). The seed has to be kept as secret as the key.
+	 * @param steganoThis The share to transform into a key, see generateKey(BitShare)
+	 * @param seed The seed, see newKeySeed()
+	 * @return The key, twice as wide and tall as steganoThis
+	 */
+	public static BitShare generateKey(BitShare steganoThis, byte[] seed) {
+		return CryptingMetrics.time(METRICS_GENERATE_KEY_SHARE, 4 * CryptingMetrics.pixels(steganoThis), () -> doGenerateKey(steganoThis, seed));
+	}
+	
+	private static BitShare doGenerateKey(BitShare steganoThis, byte[] seed) {
+		BitShare key = new BitShare(steganoThis.getWidth() * 2, steganoThis.getHeight() * 2);
+		generateKeyRows(steganoThis, key, 0, steganoThis.getHeight(), ShareRandom.newSeeded(seed));
+		return key;
+	}
+	
+	/**
+	 * @return 256 random bits from the system SecureRandom to be used with generateKey(BitShare, byte[])
+	 */
+	public static byte[] newKeySeed() {
+		byte[] seed = new byte[32];
+		SYSTEM_RANDOM.nextBytes(seed);
+		return seed;
+	}
+	
+	/**
+	 * Securely generates a new Key on all cores, see generateKey(int, int)
+	 * @param width The width of the largest encryptable Image (width of key is two times as wide)
+	 * @param height The height of the largest encryptable Image (height of key is two times as tall)
+	 * @return The key as a BufferedImage
+	 */
+	public static BufferedImage generateKeyParallel(int width, int height) {
+		return CryptingMetrics.time(METRICS_GENERATE_KEY, 4L * width * height, () -> generateKeyParallel(new BitShare(width, height)).toImage());
+	}
+	
+	/**
+	 * Securely generates a new Key from the given share on all cores. The key is split into bands of
+	 * KEY_BAND_ROWS source rows, each of which is generated with its own, independently seeded ShareRandom.
+	 * @param steganoThis The share to transform into a key, see generateKey(BitShare)
+	 * @return The key, twice as wide and tall as steganoThis
+	 */
+	public static BitShare generateKeyParallel(BitShare steganoThis) {
+		return generateKeyParallel(steganoThis, null, Progress.NONE);
+	}
+	
+	/**
+	 * Securely generates a new Key on all cores like generateKeyParallel(BitShare), reporting the rows of
+	 * steganoThis done
+	 * @param progress Receives the progress (from several threads), may cancel the generation
+	 */
+	public static BitShare generateKeyParallel(BitShare steganoThis, Progress progress) {
+		return generateKeyParallel(steganoThis, null, progress);
+	}
+	
+	/**
+	 * Generates a reproducible key on all cores: the same seed and share always result in the same key,
+	 * independent of the amount of cores. Only meant for tests, use generateKeyParallel(BitShare) for real keys.
+	 * @param steganoThis The share to transform into a key, see generateKey(BitShare)
+	 * @param seed The seed the random generators of all bands are derived from
+	 * @return The key, twice as wide and tall as steganoThis
+	 */
+	public static BitShare generateKeyParallel(BitShare steganoThis, long seed) {
+		return generateKeyParallel(steganoThis, Long.valueOf(seed), Progress.NONE);
+	}
+	
+	private static BitShare generateKeyParallel(BitShare steganoThis, Long seed, Progress progress) {
+		return CryptingMetrics.time(METRICS_GENERATE_KEY_SHARE, 4 * CryptingMetrics.pixels(steganoThis), () -> doGenerateKeyParallel(steganoThis, seed, progress));
+	}
+	
+	private static BitShare doGenerateKeyParallel(BitShare steganoThis, Long seed, Progress progress) {
+		int height = steganoThis.getHeight();
+		BitShare key = new BitShare(steganoThis.getWidth() * 2, height * 2);
 		
-		// build second image canvas
-		BufferedImage keySecondImg =  new BufferedImage(width*2, height*2, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D gSecImg = keySecondImg.createGraphics();
+		progress.begin(height);
+		int bands = (height + KEY_BAND_ROWS - 1) / KEY_BAND_ROWS;
+		IntStream.range(0, bands).parallel().forEach(band -> {
+			int fromY = band * KEY_BAND_ROWS;
+			int toY = Math.min(fromY + KEY_BAND_ROWS, height);
+			generateKeyRows(steganoThis, key, fromY, toY, seed == null
+					? ShareRandom.newSecure()
+					: ShareRandom.newSeeded(ByteBuffer.allocate(12).putLong(seed).putInt(band).array()));
+			progress.rowsDone(toY - fromY);
+		});
+		return key;
+	}
+	
+	/**
+	 * Generates the key blocks of the source rows fromY (inclusive) to toY (exclusive) into the (transparent) key
+	 */
+	private static void generateKeyRows(BitShare steganoThis, BitShare key, int fromY, int toY, ShareRandom random) {
+		int srcWidth = steganoThis.getWidth();
+		for (int y = fromY; y < toY; ++y) {
+			long[] srcRow = steganoThis.getRow(y);
+			long[] top = key.getRow(y * 2);
+			long[] bottom = key.getRow(y * 2 + 1);
+			for (int x = 0; x < srcWidth; ++x) {
+				int block = ((srcRow[x >>> 6] >>> x) & 1) == 0
+						? WHITE_BLOCKS[random.nextInt(WHITE_BLOCKS.length)]
+						: BLACK_BLOCKS[random.nextInt(BLACK_BLOCKS.length)];
+				// 32 blocks per word, the shift only uses the lower 6 bits of (x * 2)
+				top[x >>> 5] |= (long)(block & 3) << (x * 2);
+				bottom[x >>> 5] |= (long)(block >>> 2) << (x * 2);
+			}
+		}
+	}
+	
+	/**
+	 * Encrypts a share, see encryptImage(BufferedImage, BufferedImage). Works on 64 pixels at once.
+	 * @param key The key to be used for the encryption
+	 * @param src The share to be encrypted, half as wide and tall as the key
+	 * @return The encrypted share or null if an error occured
+	 */
+	public static BitShare encryptImage(BitShare key, BitShare src) {
+		return encryptImage(key, src, Progress.NONE);
+	}
+	
+	/**
+	 * Encrypts a share like encryptImage(BitShare, BitShare), reporting the encrypted rows done
+	 * @param progress Receives the progress, may cancel the encryption
+	 */
+	public static BitShare encryptImage(BitShare key, BitShare src, Progress progress) {
+		return CryptingMetrics.time(METRICS_ENCRYPT_SHARE, CryptingMetrics.pixels(key), () -> doEncryptImage(key, src, progress));
+	}
+	
+	private static BitShare doEncryptImage(BitShare key, BitShare src, Progress progress) {
+		if (key == null || src == null) return null;
+		if (src.getWidth() != key.getWidth() / 2 || src.getHeight() != key.getHeight() / 2) return null;
+		if (key.getWidth() % 2 != 0 || key.getHeight() % 2 != 0) return null;
 		
-		// fill it with a fully transparent "white" (should allready be this way with TYPE_INT_ARGB)
-		gSecImg.setColor(new Color(255, 255, 255, 0));
-		gSecImg.fillRect(0, 0, width*2, height*2);
+		BitShare enc = new BitShare(key.getWidth(), key.getHeight());
+		progress.begin(enc.getHeight());
+		for (int y = 0; y < enc.getHeight(); ++y) {
+			long[] srcRow = src.getRow(y / 2);
+			long[] keyRow = key.getRow(y);
+			long[] encRow = enc.getRow(y);
+			KERNELS.encryptRow(keyRow, srcRow, encRow);
+			progress.rowsDone(1);
+		}
+		return enc;
+	}
+	
+	/**
+	 * Generates an overlay of the key and the encrypted share, see overlayImages(BufferedImage, BufferedImage)
+	 * @param key The key used to encrypt the share
+	 * @param enc The encrypted share
+	 * @return The overlay or null if the shares are of different size
+	 */
+	public static BitShare overlayImages(BitShare key, BitShare enc) {
+		return overlayImages(key, enc, Progress.NONE);
+	}
+	
+	/**
+	 * Generates an overlay like overlayImages(BitShare, BitShare), reporting the rows done
+	 * @param progress Receives the progress, may cancel the overlay
+	 */
+	public static BitShare overlayImages(BitShare key, BitShare enc, Progress progress) {
+		return CryptingMetrics.time(METRICS_OVERLAY_SHARES, CryptingMetrics.pixels(key), () -> doOverlayImages(key, enc, progress));
+	}
+	
+	private static BitShare doOverlayImages(BitShare key, BitShare enc, Progress progress) {
+		if (key == null || enc == null || key.getWidth() != enc.getWidth() || key.getHeight() != enc.getHeight()) return null;
+		
+		BitShare overlay = new BitShare(key.getWidth(), key.getHeight());
+		progress.begin(overlay.getHeight());
+		for (int y = 0; y < overlay.getHeight(); ++y) {
+			KERNELS.overlayRow(key.getRow(y), enc.getRow(y), overlay.getRow(y));
+			progress.rowsDone(1);
+		}
+		return overlay;
+	}
+	
+	/**
+	 * Decrypts an encrypted share without building the overlay
+	 * @param key The key used to encrypt the share
+	 * @param enc The encrypted share
+	 * @return The decrypted share or null if the shares are of different or odd size
+	 */
+	public static BitShare decryptImage(BitShare key, BitShare enc) {
+		return decryptImage(key, enc, Progress.NONE);
+	}
+	
+	/**
+	 * Decrypts an encrypted share like decryptImage(BitShare, BitShare), reporting the decrypted rows done
+	 * @param progress Receives the progress, may cancel the decryption
+	 */
+	public static BitShare decryptImage(BitShare key, BitShare enc, Progress progress) {
+		return CryptingMetrics.time(METRICS_DECRYPT_SHARE, CryptingMetrics.pixels(key), () -> doDecryptImage(key, enc, progress));
+	}
+	
+	private static BitShare doDecryptImage(BitShare key, BitShare enc, Progress progress) {
+		if (key == null || enc == null || key.getWidth() != enc.getWidth() || key.getHeight() != enc.getHeight()) return null;
+		if (key.getWidth() % 2 != 0 || key.getHeight() % 2 != 0) return null;
+		
+		BitShare clean = new BitShare(key.getWidth() / 2, key.getHeight() / 2);
+		progress.begin(clean.getHeight());
+		for (int y = 0; y < clean.getHeight(); ++y) {
+			KERNELS.decryptRow(key.getRow(y * 2), key.getRow(y * 2 + 1), enc.getRow(y * 2), enc.getRow(y * 2 + 1), clean.getRow(y));
+			progress.rowsDone(1);
+		}
+		return clean;
+	}
+	
+	/**
+	 * Decrypts an encrypted share (cleans up the provided overlay)
+	 * @param overlay An overlay generated by overlayImages(BitShare, BitShare)
+	 * @return The decrypted share or null if the overlay has an odd size
+	 */
+	public static BitShare decryptImage(BitShare overlay) {
+		return CryptingMetrics.time(METRICS_DECRYPT_SHARE, CryptingMetrics.pixels(overlay), () -> doDecryptImage(overlay));
+	}
+	
+	private static BitShare doDecryptImage(BitShare overlay) {
+		if (overlay == null || overlay.getWidth() % 2 != 0 || overlay.getHeight() % 2 != 0) return null;
+		
+		BitShare clean = new BitShare(overlay.getWidth() / 2, overlay.getHeight() / 2);
+		for (int y = 0; y < clean.getHeight(); ++y) {
+			KERNELS.decryptOverlayRow(overlay.getRow(y * 2), overlay.getRow(y * 2 + 1), clean.getRow(y));
+		}
+		return clean;
+	}
+	
+	/**
+	 * Decrypts only every step-th block of an encrypted share in both directions, for a quick preview of a large
+	 * share: it takes about 1/step^2 of the time of decryptImage(BitShare, BitShare). A preview with half the step
+	 * samples all blocks of the previous one and three times as many more.
+	 * @param key The key used to encrypt the share
+	 * @param enc The encrypted share
+	 * @param step The distance of two sampled blocks, at least 1 (1 is the whole decryption)
+	 * @return The preview, a step-th as wide and tall as the decrypted share (rounded up), or null if the shares
+	 * are of different or odd size
+	 */
+	public static BitShare decryptPreview(BitShare key, BitShare enc, int step) {
+		return decryptPreview(key, enc, step, Progress.NONE);
+	}
+	
+	/**
+	 * Decrypts a preview like decryptPreview(BitShare, BitShare, int), reporting the rows of the preview done
+	 * @param progress Receives the progress, may cancel the preview
+	 */
+	public static BitShare decryptPreview(BitShare key, BitShare enc, int step, Progress progress) {
+		if (step < 1) throw new IllegalArgumentException("step has to be at least 1: " + step);
+		return CryptingMetrics.time(METRICS_DECRYPT_PREVIEW, CryptingMetrics.pixels(key) / ((long)step * step), () -> doDecryptPreview(key, enc, step, progress));
+	}
+	
+	private static BitShare doDecryptPreview(BitShare key, BitShare enc, int step, Progress progress) {
+		if (key == null || enc == null || key.getWidth() != enc.getWidth() || key.getHeight() != enc.getHeight()) return null;
+		if (key.getWidth() % 2 != 0 || key.getHeight() % 2 != 0) return null;
+		
+		int width = key.getWidth() / 2, height = key.getHeight() / 2;
+		BitShare preview = new BitShare((width + step - 1) / step, (height + step - 1) / step);
+		progress.begin(preview.getHeight());
+		for (int y = 0; y < preview.getHeight(); ++y) {
+			int keyY = y * step * 2;
+			long[] keyTop = key.getRow(keyY), keyBottom = key.getRow(keyY + 1);
+			long[] encTop = enc.getRow(keyY), encBottom = enc.getRow(keyY + 1);
+			long[] row = preview.getRow(y);
+			for (int x = 0; x < preview.getWidth(); ++x) {
+				int keyX = x * step * 2;
+				// a block is black in the overlay if all four pixels are black in key or encrypted share
+				long mask = 3L << (keyX & 63);
+				int w = keyX >>> 6;
+				if (((keyTop[w] | encTop[w]) & (keyBottom[w] | encBottom[w]) & mask) == mask) row[x >>> 6] |= 1L << x;
+			}
+			progress.rowsDone(1);
+		}
+		return preview;
+	}
+	
+	/**
+	 * Hides a share in two other ones, see hideImage(BufferedImage, BufferedImage, BufferedImage). Every block of the
+	 * second share is picked at random from all blocks that are valid for it (see buildHideBlocks()).
+	 * @param first The first share to be used to hide toHide
+	 * @param second The second share to be used to hide toHide
+	 * @param toHide The share supposed to be hidden in the other two
+	 * @return An array where index 0 is the transformed first and index 1 the transformed second, or null if error
+	 */
+	public static BitShare[] hideImage(BitShare first, BitShare second, BitShare toHide) {
+		return hideImage(first, second, toHide, Progress.NONE);
+	}
+	
+	/**
+	 * Hides a share in two other ones like hideImage(BitShare, BitShare, BitShare). Reports two operations, the
+	 * rows of the first key generated (see generateKeyParallel(BitShare, Progress)) and then the rows hidden.
+	 * @param progress Receives the progress, may cancel hiding
+	 */
+	public static BitShare[] hideImage(BitShare first, BitShare second, BitShare toHide, Progress progress) {
+		return CryptingMetrics.time(METRICS_HIDE_SHARES, 4 * CryptingMetrics.pixels(first), () -> doHideImage(first, second, toHide, progress));
+	}
+	
+	private static BitShare[] doHideImage(BitShare first, BitShare second, BitShare toHide, Progress progress) {
+		if (first == null || second == null || toHide == null) return null;
+		int width = first.getWidth();
+		int height = first.getHeight();
+		if (second.getWidth() != width || toHide.getWidth() != width
+				|| second.getHeight() != height || toHide.getHeight() != height) return null;
 		
-		gSecImg.setColor(new Color(0, 0, 0, 255)); // black
+		// generate a key out of the first image
+		BitShare keyFirst = generateKeyParallel(first, progress);
+		BitShare keySecond = new BitShare(width * 2, height * 2);
+		ShareRandom random = ShareRandom.newSecure();
 		
+		progress.begin(height);
 		for (int y = 0; y < height; ++y) {
+			long[] secondRow = second.getRow(y);
+			long[] toHideRow = toHide.getRow(y);
 			for (int x = 0; x < width; ++x) {
-				// determine the top left pixel of the 4x4 pixel block of the new second imag key
-				int newX = x * 2;
-				int newY = y * 2;
-
-				int iRgb = imgToHide.getRGB(x, y);
-				boolean targetShouldBeBlack = (iRgb>>>24 != 0); // transparency
-				iRgb = imgSecond.getRGB(x, y);
-				boolean secondImageIsBlack = (iRgb>>>24 != 0);
-				
-				// determine how many black pixels we want to set
-				// for example, result could look like this, white, then black:
-				// 0 | 1     1 | 1
-				// 1 | 0     1 | 0
-				int blackPixelsToSet = secondImageIsBlack ? 3 : 2;
-				
-				// if targetShouldBeBlack is true, 4/4 pixels of this block should, when combined with first image, be black
-				// if targetShouldBeBlack is false, 3/4 pixels of this block should, when combined with first image, be black
-				// if secondImageIsBlack is true, 3/4 pixels of this block should be black
-				// if secondImageIsBlack is false, 2/4 pixels of this block should be black
-				// refer to the truth table at http://datagenetics.com/blog/november32013/c2.png from
-				// http://datagenetics.com/blog/november32013/index.html where B1 is first image, B2 the one we're making
-				// and the one at the top the one to be hidden
+				int secondIsBlack = (int)(secondRow[x >>> 6] >>> x) & 1;
+				int targetShouldBeBlack = (int)(toHideRow[x >>> 6] >>> x) & 1;
+				int firstBlock = getBlock(keyFirst, x * 2, y * 2);
 				
-				// new pixels
-				Boolean[][] newPixels = new Boolean[2][2]; // initialized to [[null, null],[null, null]]
-				// set the 1-2 white pixels of the original to black (skip one if target should be white, resulting in 0-1 px)
-				boolean skipFirst = !targetShouldBeBlack;
-				for (int minix = 0; minix < 2; ++minix) {
-					for (int miniy = 0; miniy < 2; ++miniy) {
-						// determine if the pixel at this pos in the first image is white
-						int firstRgb = keyFirstImg.getRGB(newX + minix, newY + miniy);
-						boolean firstIsWhite = (firstRgb != Color.BLACK.getRGB()); // made before, can only be black or transparent
-						
-						if (firstIsWhite) {
-							if (skipFirst) {
-								skipFirst = false;
-								newPixels[minix][miniy] = Boolean.FALSE; // make white as well
-								continue;
-							}
-							newPixels[minix][miniy] = Boolean.TRUE;
-							-- blackPixelsToSet;
-						}
-					}
-				}
-				
-				// randomly set blackPixelsToSet amount to black of the fields that weren't set (to black or white) before
-				// for that, make a list of unused pixels and shuffle
-				ArrayList<Integer> shuffleList = new ArrayList<>();
-				for (int minix = 0; minix < 2; ++minix) {
-					for (int miniy = 0; miniy < 2; ++miniy) {
-						if (newPixels[minix][miniy] == null) shuffleList.add(minix*2 + miniy);
-					}
-				}
-				// get securerandom. on linux, this uses NativePRNG (e.g. /dev/urandom), on windows, it uses SHA1PRNG
-				SecureRandom secureRandom = new SecureRandom();
-				Collections.shuffle(shuffleList, secureRandom);
-				
-				for (int i = blackPixelsToSet - 1; i >= 0; --i) {
-					// shuffleList has at least as many contents as blackPixelsToSet
-					int idx = shuffleList.get(i);
-					int idxx = idx / 2;
-					int idxy = idx % 2;
-					newPixels[idxx][idxy] = Boolean.TRUE;
-				}
-				
-//				// set all the rest if any to white
-//				for (int minix = 0; minix < 2; ++minix) {
-//					for (int miniy = 0; miniy < 2; ++miniy) {
-//						if (newPixels[minix][miniy] == null) newPixels[minix][miniy] = Boolean.FALSE;
-//					}
-//				}
-				
-				// now write all new black pixels down
-				for (int minix = 0; minix < 2; ++minix) {
-					for (int miniy = 0; miniy < 2; ++miniy) {
-						if (newPixels[minix][miniy] != null && newPixels[minix][miniy].booleanValue()) {
-							gSecImg.fillRect(newX + minix, newY + miniy, 1, 1);
-						}
+				int[] blocks = HIDE_BLOCKS[(firstBlock << 2) | (secondIsBlack << 1) | targetShouldBeBlack];
+				setBlock(keySecond, x * 2, y * 2, blocks[random.nextInt(blocks.length)]);
+			}
+			progress.rowsDone(1);
+		}
+		
+		return new BitShare[]{keyFirst, keySecond};
+	}
+	
+	/**
+	 * Lists every block the second share of hideImage may get. The block has 3/4 pixels black if the second image
+	 * is black, 2/4 if it's white. Overlaid with the block of the first key, 4/4 pixels are black if the target
+	 * should be black and 3/4 if it should be white. Refer to the truth table at
+	 * http://datagenetics.com/blog/november32013/c2.png (B1 is the first key, B2 the second)
+	 */
+	private static int[][] buildHideBlocks() {
+		int[][] table = new int[16 << 2][];
+		for (int firstBlock = 0; firstBlock < 16; ++firstBlock) {
+			for (int secondIsBlack = 0; secondIsBlack < 2; ++secondIsBlack) {
+				for (int targetShouldBeBlack = 0; targetShouldBeBlack < 2; ++targetShouldBeBlack) {
+					int[] blocks = new int[16];
+					int count = 0;
+					for (int block = 0; block < 16; ++block) {
+						if (Integer.bitCount(block) != 2 + secondIsBlack) continue;
+						if (Integer.bitCount(block | firstBlock) != 3 + targetShouldBeBlack) continue;
+						blocks[count++] = block;
 					}
+					// first keys only have blocks with 2 or 3 black pixels, the others stay empty
+					table[(firstBlock << 2) | (secondIsBlack << 1) | targetShouldBeBlack] = Arrays.copyOf(blocks, count);
 				}
 			}
 		}
-		gSecImg.dispose();
-		
-		return new BufferedImage[]{keyFirstImg, keySecondImg};
+		return table;
+	}
+	
+	/**
+	 * Reads the 2x2 block at x, y (both even) as a 4 bit pattern
+	 */
+	private static int getBlock(BitShare share, int x, int y) {
+		int top = (int)(share.getRow(y)[x >>> 6] >>> x) & 3;
+		int bottom = (int)(share.getRow(y + 1)[x >>> 6] >>> x) & 3;
+		return top | (bottom << 2);
+	}
+	
+	/**
+	 * Writes a 4 bit pattern into the (so far transparent) 2x2 block at x, y (both even)
+	 */
+	private static void setBlock(BitShare share, int x, int y, int block) {
+		share.getRow(y)[x >>> 6] |= (long)(block & 3) << x;
+		share.getRow(y + 1)[x >>> 6] |= (long)(block >>> 2) << x;
 	}
 }
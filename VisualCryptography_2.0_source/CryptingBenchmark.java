@@ -0,0 +1,203 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import javax.imageio.ImageIO;
+
+
+/**
+ * Benchmarks every Crypting operation at several resolutions with mostly black and mostly white input.
+ * Prints the time per operation, the throughput in source megapixels per second and the bytes allocated
+ * per operation, summed over all live threads so that the workers of the parallel operations are counted too
+ * (threads that end while measuring are missed).
+ * Run with -Djava.awt.headless=true and a large enough -Xmx. Arguments (all optional):
+ * <pre>
+ *   sizes=256,1024,4096      width and height of the source images
+ *   ops=encryptImage,...     only run the operations whose name starts with one of these
+ *   time=1000                minimum measured milliseconds per case
+ * </pre>
+ */
+public class CryptingBenchmark {
+	private static final int[] DEFAULT_SIZES = {256, 1024, 2048, 4096, 8192};
+	private static final long WARMUP_MS = 500;
+	private static final int MIN_WARMUP_RUNS = 2;
+	private static final int MIN_MEASURED_RUNS = 3;
+
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	private int[] sizes = DEFAULT_SIZES;
+	private List<String> ops = null;
+	private long measureMs = 1000;
+
+	public static void main(String[] args) throws IOException {
+		CryptingBenchmark benchmark = new CryptingBenchmark();
+		for (String arg : args) {
+			if (arg.startsWith("sizes=")) {
+				benchmark.sizes = Arrays.stream(arg.substring(6).split(",")).mapToInt(Integer::parseInt).toArray();
+			} else if (arg.startsWith("ops=")) {
+				benchmark.ops = Arrays.asList(arg.substring(4).split(","));
+			} else if (arg.startsWith("time=")) {
+				benchmark.measureMs = Long.parseLong(arg.substring(5));
+			} else {
+				System.err.println("Unknown argument " + arg);
+				System.exit(1);
+			}
+		}
+		benchmark.run();
+	}
+
+	private void run() throws IOException {
+		System.out.println(String.format(Locale.ROOT, "%-34s %6s %6s %11s %10s %12s %10s",
+				"operation", "size", "input", "ms/op", "MP/s", "MB alloc/op", "MB/s alloc"));
+		for (int size : sizes) {
+			for (boolean mostlyBlack : new boolean[] {true, false}) {
+				try {
+					runSize(size, mostlyBlack);
+				} catch (OutOfMemoryError e) {
+					System.out.println(size + "x" + size + ": out of memory, skipping (raise -Xmx)");
+				}
+			}
+		}
+	}
+
+	private void runSize(int size, boolean mostlyBlack) throws IOException {
+		String input = mostlyBlack ? "black" : "white";
+		BufferedImage imgSrc = randomImage(size, size, mostlyBlack ? 0.9 : 0.1, 1);
+		BufferedImage imgSecond = randomImage(size, size, mostlyBlack ? 0.9 : 0.1, 2);
+		BufferedImage imgKey = Crypting.generateKey(size, size);
+		BufferedImage imgEnc = Crypting.encryptImage(imgKey, imgSrc);
+		BufferedImage imgOverlay = Crypting.overlayImages(imgKey, imgEnc);
+		BitShare src = BitShare.fromImage(imgSrc);
+		BitShare second = BitShare.fromImage(imgSecond);
+		BitShare key = BitShare.fromImage(imgKey);
+		BitShare enc = BitShare.fromImage(imgEnc);
+		ThresholdScheme threshold = new ThresholdScheme(3, 5);
+		// generated by the first (warmup) run of the decrypt case, so only if it runs
+		BitShare[][] thresholdShares = {null};
+
+		File srcFile = File.createTempFile("benchmark-src", ".png");
+		File encFile = File.createTempFile("benchmark-enc", ".png");
+		try {
+			ImageIO.write(imgSrc, "png", srcFile);
+			ImageIO.write(imgEnc, "png", encFile);
+
+			List<Case> cases = new ArrayList<>();
+			cases.add(new Case("generateKey(int, int)", () -> Crypting.generateKey(size, size)));
+			cases.add(new Case("generateKey(BufferedImage)", () -> Crypting.generateKey(imgSrc)));
+			cases.add(new Case("generateKey(BitShare)", () -> Crypting.generateKey(src)));
+			cases.add(new Case("generateKeyParallel(BitShare)", () -> Crypting.generateKeyParallel(src)));
+			cases.add(new Case("loadAndCheckSource", () -> Crypting.loadAndCheckSource(srcFile, size, size, true)));
+			cases.add(new Case("loadAndCheckEncrFile", () -> Crypting.loadAndCheckEncrFile(encFile)));
+			cases.add(new Case("encryptImage(BufferedImage..)", () -> Crypting.encryptImage(imgKey, imgSrc)));
+			cases.add(new Case("encryptImage(BitShare..)", () -> Crypting.encryptImage(key, src)));
+			cases.add(new Case("overlayImages(BufferedImage..)", () -> Crypting.overlayImages(imgKey, imgEnc)));
+			cases.add(new Case("overlayImages(BitShare..)", () -> Crypting.overlayImages(key, enc)));
+			cases.add(new Case("decryptImage(BufferedImage, ..)", () -> Crypting.decryptImage(imgKey, imgEnc)));
+			cases.add(new Case("decryptImage(BufferedImage)", () -> Crypting.decryptImage(imgOverlay)));
+			cases.add(new Case("decryptImage(BitShare, ..)", () -> Crypting.decryptImage(key, enc)));
+			cases.add(new Case("hideImage(BufferedImage..)", () -> Crypting.hideImage(imgSrc, imgSecond, imgSrc)));
+			cases.add(new Case("hideImage(BitShare..)", () -> Crypting.hideImage(src, second, src)));
+			cases.add(new Case("ThresholdScheme(3, 5).generate", () -> threshold.generateShares(src)));
+			cases.add(new Case("ThresholdScheme(3, 5).decrypt", () -> {
+				if (thresholdShares[0] == null) thresholdShares[0] = threshold.generateShares(src);
+				BitShare[] shares = thresholdShares[0];
+				return threshold.decrypt(shares[0], shares[2], shares[4]);
+			}));
+
+			for (Case benchmarkCase : cases) {
+				if (ops != null && ops.stream().noneMatch(benchmarkCase.name::startsWith)) continue;
+				measure(benchmarkCase.name, size, input, benchmarkCase.operation);
+			}
+		} finally {
+			srcFile.delete();
+			encFile.delete();
+		}
+	}
+
+	/**
+	 * Warms an operation up, then runs it for at least measureMs and prints the results
+	 */
+	private void measure(String name, int size, String input, Callable<?> operation) {
+		try {
+			long warmupEnd = System.nanoTime() + WARMUP_MS * 1000000;
+			for (int i = 0; i < MIN_WARMUP_RUNS || System.nanoTime() < warmupEnd; ++i) consume(operation.call());
+
+			Map<Long, Long> allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			long measureEnd = start + measureMs * 1000000;
+			int runs = 0;
+			while (runs < MIN_MEASURED_RUNS || System.nanoTime() < measureEnd) {
+				consume(operation.call());
+				++runs;
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			double allocated = 0;
+			for (Map.Entry<Long, Long> thread : allocatedBytes().entrySet()) {
+				allocated += thread.getValue() - allocatedBefore.getOrDefault(thread.getKey(), 0L);
+			}
+
+			System.out.println(String.format(Locale.ROOT, "%-34s %6d %6s %11.2f %10.2f %12.2f %10.1f",
+					name, size, input, seconds * 1000 / runs, (double)size * size * runs / 1e6 / seconds,
+					allocated / runs / 1e6, allocated / 1e6 / seconds));
+		} catch (OutOfMemoryError e) {
+			System.out.println(String.format(Locale.ROOT, "%-34s %6d %6s out of memory", name, size, input));
+		} catch (Exception e) {
+			System.out.println(String.format(Locale.ROOT, "%-34s %6d %6s failed: %s", name, size, input, e));
+		}
+	}
+
+	/**
+	 * @return The bytes allocated so far by each live thread, by its id
+	 */
+	private static Map<Long, Long> allocatedBytes() {
+		long[] ids = THREAD_BEAN.getAllThreadIds();
+		long[] bytes = THREAD_BEAN.getThreadAllocatedBytes(ids);
+		Map<Long, Long> allocated = new HashMap<>();
+		for (int i = 0; i < ids.length; ++i) {
+			if (bytes[i] >= 0) allocated.put(ids[i], bytes[i]); // -1 if it ended meanwhile
+		}
+		return allocated;
+	}
+
+	private static volatile int sink;
+
+	/**
+	 * Keeps the JIT from removing an operation whose result isn't used
+	 */
+	private static void consume(Object result) {
+		sink += System.identityHashCode(result);
+	}
+
+	/**
+	 * @return An image where each pixel is black with the given probability, transparent otherwise
+	 */
+	private static BufferedImage randomImage(int width, int height, double blackRatio, long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				if (random.nextDouble() < blackRatio) img.setRGB(x, y, BitShare.BLACK);
+			}
+		}
+		return img;
+	}
+
+	private static class Case {
+		final String name;
+		final Callable<?> operation;
+
+		Case(String name, Callable<?> operation) {
+			this.name = name;
+			this.operation = operation;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+import java.awt.Component;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+
+/**
+ * Runs a long operation of a frame in the background, so that the window stays responsive. Jobs of all frames
+ * are queued and run one after the other on a single thread (the operations use all cores themselves, see
+ * Crypting.generateKeyParallel). The job is the Progress of the Crypting methods it calls: it reports the rows
+ * done as "progress" and "status" property changes and cancels them by throwing a CancellationException.
+ * See JobPanel for showing it in a frame.
+ */
+public class CryptingJob<T> extends SwingWorker<T, Void> implements Progress {
+	/**
+	 * The work done in the background
+	 */
+	public interface Task<T> {
+		/**
+		 * @param job The job running the task, to be passed on as Progress and to name the steps
+		 * @return The result, handed to Done on the event dispatch thread
+		 * @throws Failure If the task can't be done, the message is shown to the user
+		 */
+		T run(CryptingJob<T> job) throws Exception;
+	}
+
+	/**
+	 * Receives the result of a task that wasn't cancelled and didn't fail, on the event dispatch thread
+	 */
+	public interface Done<T> {
+		void done(T result);
+	}
+
+	/**
+	 * Thrown by a task that can't be done, e.g. because a file isn't valid. The message is shown to the user.
+	 */
+	public static class Failure extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public Failure(String message) {
+			super(message);
+		}
+	}
+
+	private static final Logger LOG = Logger.getLogger(CryptingJob.class.getName());
+	private static final ExecutorService QUEUE = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Crypting jobs");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Component parent;
+	private final Task<T> task;
+	private final Done<T> done;
+	private Runnable finished = null;
+	// set by the worker when it starts the task, or by done() if the job was cancelled before that
+	private final AtomicBoolean started = new AtomicBoolean();
+	// on the event dispatch thread only: whether done() was called and the worker has left the task
+	private boolean over = false;
+	private boolean exited = false;
+
+	private volatile String step = "Waiting for other jobs";
+	private volatile long rows = 0;
+	private final AtomicLong rowsDone = new AtomicLong();
+
+	/**
+	 * @param parent The component errors are shown on
+	 * @param task The work to be done in the background
+	 * @param done Receives the result
+	 */
+	public CryptingJob(Component parent, Task<T> task, Done<T> done) {
+		this.parent = parent;
+		this.task = task;
+		this.done = done;
+	}
+
+	/**
+	 * Queues the job behind the ones of all frames, use this instead of execute()
+	 */
+	public void queue() {
+		QUEUE.execute(this);
+	}
+
+	/**
+	 * Sets something to run on the event dispatch thread when the job is over, before the result is handled.
+	 * A cancelled job is only over once its worker has actually stopped, not when it is cancelled.
+	 */
+	void setFinished(Runnable finished) {
+		this.finished = finished;
+	}
+
+	/**
+	 * Names what the job does next, until the next operation begins
+	 * @param text Shown to the user, e.g. "Loading key"
+	 * @throws CancellationException If the job was cancelled
+	 */
+	public void step(String text) {
+		checkCancelled();
+		step = text;
+		rows = 0;
+		rowsDone.set(0);
+		setProgress(0);
+		firePropertyChange("status", null, getStatus());
+	}
+
+	@Override
+	public void begin(long rows) {
+		checkCancelled();
+		this.rows = rows;
+		rowsDone.set(0);
+		setProgress(0);
+		firePropertyChange("status", null, getStatus());
+	}
+
+	@Override
+	public void rowsDone(int rows) {
+		checkCancelled();
+		long total = this.rows;
+		long done = rowsDone.addAndGet(rows);
+		if (total <= 0) return;
+		int percent = (int)Math.min(100, done * 100 / total);
+		// only tell the frame when the percentage changes, not for every row
+		if (percent != getProgress()) {
+			setProgress(percent);
+			firePropertyChange("status", null, getStatus());
+		}
+	}
+
+	/**
+	 * @return What the job is doing, e.g. "Encrypting: 1200 of 4000 rows"
+	 */
+	public String getStatus() {
+		long total = rows;
+		return total > 0 ? step + ": " + Math.min(rowsDone.get(), total) + " of " + total + " rows" : step;
+	}
+
+	private void checkCancelled() {
+		if (isCancelled()) throw new CancellationException();
+	}
+
+	/**
+	 * Creates a job that saves a share as 1-bit png, see SharePngWriter
+	 * @param parent The component errors are shown on
+	 * @param share The share
+	 * @param f The file
+	 * @return The job, to be queued on a JobPanel
+	 */
+	public static CryptingJob<Void> save(Component parent, BitShare share, File f) {
+		return new CryptingJob<Void>(parent, job -> {
+			job.step("Saving " + f.getName());
+			try {
+				SharePngWriter.DEFAULT.write(share, f, job);
+			} catch (IOException e) {
+				throw new Failure("Could not Save file because: " + e.getLocalizedMessage());
+			}
+			return null;
+		}, null);
+	}
+
+	@Override
+	protected T doInBackground() throws Exception {
+		if (!started.compareAndSet(false, true)) throw new CancellationException();
+		try {
+			return task.run(this);
+		} finally {
+			// before done() of a job that wasn't cancelled, as that is only queued once this returns
+			SwingUtilities.invokeLater(() -> {
+				exited = true;
+				finishIfOver();
+			});
+		}
+	}
+
+	/**
+	 * Runs finished once done() was called and the worker isn't running the task (anymore)
+	 */
+	private void finishIfOver() {
+		if (!over || !exited || finished == null) return;
+		Runnable run = finished;
+		finished = null;
+		run.run();
+	}
+
+	@Override
+	protected void done() {
+		over = true;
+		// cancelled before the worker got to it, the task never runs
+		if (started.compareAndSet(false, true)) exited = true;
+		finishIfOver();
+		try {
+			T result = get();
+			if (done != null) done.done(result);
+		} catch (CancellationException | InterruptedException e) {
+			// cancelled by the user, nothing to show
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			String message;
+			if (cause instanceof Failure) {
+				message = cause.getMessage();
+			} else if (cause instanceof OutOfMemoryError) {
+				message = "Not enough memory, try smaller images or a larger -Xmx";
+			} else {
+				LOG.log(Level.WARNING, "Job failed while " + step, cause);
+				message = "Failed because: " + cause.getLocalizedMessage();
+			}
+			JOptionPane.showMessageDialog(parent, message, "ERROR", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+}
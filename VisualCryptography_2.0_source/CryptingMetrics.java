@@ -0,0 +1,374 @@
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * Counts the calls of the Crypting operations, the pixels they process, how long they take and how much they
+ * allocate. Every operation is an MXBean named "VisualCryptography:type=Operation,name=..." in the platform
+ * MBean server (e.g. for jconsole) and can be logged periodically, see PERIOD_PROPERTY.
+ * Only the outermost operation of a thread is recorded: the key hideShares generates isn't counted as generateKeyShare.
+ * Allocations are those of the calling thread, so the work done by the common pool for the parallel operations
+ * isn't included (their results are allocated by the caller though).
+ */
+public class CryptingMetrics {
+	/** system property with the seconds between two reports to the log, none if not set */
+	public static final String PERIOD_PROPERTY = "visualcryptography.metrics.period";
+
+	/**
+	 * The metrics of an operation as seen through JMX
+	 */
+	public interface OperationMXBean {
+		long getCalls();
+
+		/**
+		 * @return The pixels processed in millions, see Operation.start
+		 */
+		double getMegapixels();
+
+		double getMeanMillis();
+
+		/**
+		 * @return The median duration, accurate to BUCKET_ERROR
+		 */
+		double getP50Millis();
+
+		/**
+		 * @return The duration 99% of the calls didn't exceed, accurate to BUCKET_ERROR
+		 */
+		double getP99Millis();
+
+		double getMaxMillis();
+
+		long getAllocatedBytes();
+
+		long getAllocatedBytesPerCall();
+
+		/**
+		 * Starts counting from 0 again
+		 */
+		void reset();
+	}
+
+	/**
+	 * Records one call, returned by Operation.start. Closing it ends the call.
+	 */
+	public interface Call extends AutoCloseable {
+		/**
+		 * Adds pixels that weren't known when the call started (e.g. of an image that was just read)
+		 */
+		void addPixels(long pixels);
+
+		@Override
+		void close();
+	}
+
+	// the durations are kept in 8 buckets per power of two, so every bucket is at most 1/8 off
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	/** the relative error of the percentiles */
+	public static final double BUCKET_ERROR = 1.0 / SUB_BUCKETS;
+
+	private static final Logger LOG = Logger.getLogger(CryptingMetrics.class.getName());
+	private static final Map<String, Operation> OPERATIONS = new ConcurrentHashMap<>();
+	// the outermost call of the thread, nested ones aren't recorded on their own
+	private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+	static {
+		String period = System.getProperty(PERIOD_PROPERTY);
+		if (period != null) {
+			try {
+				startReporter(Long.parseLong(period.trim()));
+			} catch (IllegalArgumentException e) {
+				LOG.warning("Invalid " + PERIOD_PROPERTY + ": " + period);
+			}
+		}
+	}
+
+	/**
+	 * An operation, e.g. "encryptShare". Thread safe, calls may be recorded concurrently.
+	 */
+	public static class Operation implements OperationMXBean {
+		private final String name;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder pixels = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder allocated = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		private Operation(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Starts a call, to be closed when it's done, see CryptingMetrics.time
+		 * @param pixels The pixels the call processes, e.g. of the key
+		 * @return The call, only adding its pixels to the outer one if the thread is in another operation already
+		 */
+		public Call start(long pixels) {
+			Call outer = CURRENT.get();
+			if (outer != null) {
+				// the pixels of a nested call are the outer call's, e.g. of an image it has a loader read
+				return new Call() {
+					@Override
+					public void addPixels(long pixels) {
+						outer.addPixels(pixels);
+					}
+
+					@Override
+					public void close() {
+					}
+				};
+			}
+			long startAllocated = allocatedBytes();
+			long startNanos = System.nanoTime();
+			this.pixels.add(pixels);
+			Call call = new Call() {
+				private boolean closed = false;
+
+				@Override
+				public void addPixels(long pixels) {
+					Operation.this.pixels.add(pixels);
+				}
+
+				@Override
+				public void close() {
+					if (closed) return;
+					closed = true;
+					record(System.nanoTime() - startNanos, allocatedBytes() - startAllocated);
+					CURRENT.remove();
+				}
+			};
+			CURRENT.set(call);
+			return call;
+		}
+
+		private void record(long duration, long bytes) {
+			calls.increment();
+			nanos.add(duration);
+			if (bytes > 0) allocated.add(bytes);
+			maxNanos.accumulate(duration);
+			histogram.incrementAndGet(bucket(duration));
+		}
+
+		@Override
+		public long getCalls() {
+			return calls.sum();
+		}
+
+		@Override
+		public double getMegapixels() {
+			return pixels.sum() / 1e6;
+		}
+
+		@Override
+		public double getMeanMillis() {
+			long count = calls.sum();
+			return count == 0 ? 0 : nanos.sum() / 1e6 / count;
+		}
+
+		@Override
+		public double getP50Millis() {
+			return percentile(0.5) / 1e6;
+		}
+
+		@Override
+		public double getP99Millis() {
+			return percentile(0.99) / 1e6;
+		}
+
+		@Override
+		public double getMaxMillis() {
+			return maxNanos.get() / 1e6;
+		}
+
+		@Override
+		public long getAllocatedBytes() {
+			return allocated.sum();
+		}
+
+		@Override
+		public long getAllocatedBytesPerCall() {
+			long count = calls.sum();
+			return count == 0 ? 0 : allocated.sum() / count;
+		}
+
+		@Override
+		public void reset() {
+			calls.reset();
+			pixels.reset();
+			nanos.reset();
+			allocated.reset();
+			maxNanos.reset();
+			for (int i = 0; i < BUCKETS; ++i) histogram.set(i, 0);
+		}
+
+		/**
+		 * @return The duration in ns the given fraction of the calls didn't exceed (the middle of its bucket)
+		 */
+		private long percentile(double fraction) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; ++i) total += counts[i] = histogram.get(i);
+			if (total == 0) return 0;
+			long rank = (long)Math.ceil(fraction * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; ++i) {
+				seen += counts[i];
+				if (seen >= rank) return Math.min(lowerBound(i) / 2 + lowerBound(i + 1) / 2, maxNanos.get());
+			}
+			return maxNanos.get();
+		}
+
+		/**
+		 * @return One line for the log, e.g. "encryptShare: 12 calls, 48.0 MP, p50 3.10 ms, ..."
+		 */
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s: %d calls, %.1f MP, mean %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d KB allocated per call",
+					name, getCalls(), getMegapixels(), getMeanMillis(), getP50Millis(), getP99Millis(), getMaxMillis(), getAllocatedBytesPerCall() / 1024);
+		}
+	}
+
+	/**
+	 * @return The bucket of a duration: values below SUB_BUCKETS have their own, above that SUB_BUCKETS per power of two
+	 */
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) return (int)Math.max(value, 0);
+		int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (magnitude + 1) * SUB_BUCKETS + (int)(value >>> magnitude) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return The smallest value of a bucket, the inverse of bucket()
+	 */
+	static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int magnitude = bucket / SUB_BUCKETS - 1;
+		// past the largest long
+		if (magnitude > 63 - SUB_BUCKET_BITS - 1) return Long.MAX_VALUE;
+		return (long)(bucket % SUB_BUCKETS + SUB_BUCKETS) << magnitude;
+	}
+
+	/**
+	 * Gets the operation of the given name, registering it with JMX the first time
+	 * @param name The name, e.g. "encryptShare"
+	 * @return The operation
+	 */
+	public static Operation operation(String name) {
+		return OPERATIONS.computeIfAbsent(name, key -> {
+			Operation operation = new Operation(key);
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(operation,
+						new ObjectName("VisualCryptography:type=Operation,name=" + ObjectName.quote(key)));
+			} catch (JMException | SecurityException e) {
+				// still counted, only not visible through JMX
+				LOG.warning("Could not register " + key + " with JMX: " + e);
+			}
+			return operation;
+		});
+	}
+
+	/**
+	 * Records a call of an operation around the given work, like Operation.start and Call.close
+	 * @param operation The operation
+	 * @param pixels The pixels the call processes, e.g. of the key
+	 * @param work The work, its result is returned
+	 * @return The result of work
+	 */
+	public static <T> T time(Operation operation, long pixels, Supplier<T> work) {
+		Call call = operation.start(pixels);
+		try {
+			return work.get();
+		} finally {
+			call.close();
+		}
+	}
+
+	/**
+	 * Adds pixels to the call the current thread is in (see Call.addPixels), e.g. of an image the work of time()
+	 * just read. Nothing happens outside of a call.
+	 */
+	public static void addPixels(long pixels) {
+		Call call = CURRENT.get();
+		if (call != null) call.addPixels(pixels);
+	}
+
+	/**
+	 * @return The pixels of an image, 0 for null. For the Operation.start of methods that take null.
+	 */
+	static long pixels(BitShare share) {
+		return share == null ? 0 : (long)share.getWidth() * share.getHeight();
+	}
+
+	static long pixels(BufferedImage img) {
+		return img == null ? 0 : (long)img.getWidth() * img.getHeight();
+	}
+
+	/**
+	 * Logs every operation that was called at least once (since it was last reset), every period seconds
+	 * @param periodSeconds The time between two reports
+	 * @return The executor of the reports, to shut it down
+	 */
+	public static ScheduledExecutorService startReporter(long periodSeconds) {
+		if (periodSeconds < 1) throw new IllegalArgumentException("Period has to be at least 1 s: " + periodSeconds);
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "CryptingMetrics reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(CryptingMetrics::report, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+		return reporter;
+	}
+
+	/**
+	 * Logs every operation that was called at least once
+	 */
+	public static void report() {
+		OPERATIONS.values().stream()
+				.filter(operation -> operation.getCalls() > 0)
+				.sorted((a, b) -> a.getName().compareTo(b.getName()))
+				.forEach(operation -> LOG.info(operation.toString()));
+	}
+
+	/**
+	 * @return The counter of the bytes threads allocate or null if the JVM can't count them
+	 */
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)threads;
+		try {
+			if (!counter.isThreadAllocatedMemorySupported()) return null;
+			if (!counter.isThreadAllocatedMemoryEnabled()) counter.setThreadAllocatedMemoryEnabled(true);
+			return counter;
+		} catch (UnsupportedOperationException | SecurityException e) {
+			return null;
+		}
+	}
+
+	private static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+}
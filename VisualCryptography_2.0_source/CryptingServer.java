@@ -0,0 +1,609 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Serves the pages of the Webserver directory and the crypting operations over HTTP, with the HTTP server of the
+ * JDK (run with -Djava.awt.headless=true). Images are uploaded as multipart/form-data (like an HTML form with file
+ * inputs sends them), the results are sent back as 1-bit pngs.
+ * <ul>
+ * <li>POST /api/keygen?width=W&amp;height=H: a key for images up to W x H</li>
+ * <li>POST /api/encrypt[?dither=threshold|ordered|diffusion] with parts key and source: the encrypted image</li>
+ * <li>POST /api/decrypt with parts key and encrypted: the decrypted image</li>
+ * <li>POST /api/stegano[?dither=...] with parts first, second and hide: a zip with first.png and second.png</li>
+ * </ul>
+ * Uploads are streamed into temporary files and processed like BatchCrypting does. At most maxConcurrent
+ * operations (including their uploads) run at once, so concurrent large uploads can't exhaust the heap; others are
+ * turned away with 503 right away, so they don't hold up the threads serving the pages.
+ * Requests are handled on virtual threads if the JVM has them (Java 21 and later), on a bounded pool otherwise.
+ */
+public class CryptingServer {
+	private static final String USAGE =
+			"Usage: java -Djava.awt.headless=true CryptingServer [--port N] [--root DIR]\n" +
+			"       [--max-concurrent N] [--max-upload-mb N] [--max-pixels N]";
+	/** the Retry-After sent with a 503 when all operations are running */
+	public static final int RETRY_AFTER_SECONDS = 5;
+	// threads of the pool if there are no virtual threads, the static pages don't need many
+	private static final int POOL_THREADS = 32;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Logger LOG = Logger.getLogger(CryptingServer.class.getName());
+
+	private final File root;
+	private final long maxUploadBytes;
+	private final long maxPixels;
+	private final Semaphore operations;
+	private final SharePngWriter writer = SharePngWriter.DEFAULT;
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+
+	/**
+	 * @param root The directory of the static pages
+	 * @param maxConcurrent The most operations to run at once
+	 * @param maxUploadBytes The most bytes a request may upload
+	 * @param maxPixels The most pixels of a key or image
+	 */
+	public CryptingServer(File root, int maxConcurrent, long maxUploadBytes, long maxPixels) {
+		this.root = root;
+		this.maxUploadBytes = maxUploadBytes;
+		this.maxPixels = maxPixels;
+		this.operations = new Semaphore(maxConcurrent, true);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = 8080;
+		File root = new File("Webserver");
+		int maxConcurrent = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		long maxUploadBytes = 256L * 1024 * 1024;
+		long maxPixels = 100_000_000L;
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+				String value = args[i + 1];
+				switch (args[i]) {
+				case "--port":
+					port = Integer.parseInt(value);
+					break;
+				case "--root":
+					root = new File(value);
+					break;
+				case "--max-concurrent":
+					maxConcurrent = Integer.parseInt(value);
+					break;
+				case "--max-upload-mb":
+					maxUploadBytes = Long.parseLong(value) * 1024 * 1024;
+					break;
+				case "--max-pixels":
+					maxPixels = Long.parseLong(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}
+			if (maxConcurrent < 1) throw new IllegalArgumentException("--max-concurrent has to be at least 1");
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getLocalizedMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		if (!root.isDirectory()) System.err.println("No directory " + root + ", only the API is served");
+
+		CryptingServer server = new CryptingServer(root, maxConcurrent, maxUploadBytes, maxPixels);
+		server.start(port);
+		System.out.println("Serving " + root + " and /api on port " + server.getPort());
+	}
+
+	/**
+	 * Starts serving
+	 * @param port The port, 0 for any free one
+	 * @throws IOException If the port can't be bound
+	 */
+	public synchronized void start(int port) throws IOException {
+		if (server != null) throw new IllegalStateException("Already started");
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = newExecutor();
+		server.setExecutor(executor);
+		server.createContext("/", this::handleStatic);
+		server.createContext("/api/keygen", exchange -> handleOperation(exchange, this::keygen));
+		server.createContext("/api/encrypt", exchange -> handleOperation(exchange, this::encrypt));
+		server.createContext("/api/decrypt", exchange -> handleOperation(exchange, this::decrypt));
+		server.createContext("/api/stegano", exchange -> handleOperation(exchange, this::stegano));
+		server.start();
+	}
+
+	/**
+	 * Stops serving, waiting up to delaySeconds for running requests
+	 */
+	public synchronized void stop(int delaySeconds) {
+		if (server == null) return;
+		server.stop(delaySeconds);
+		executor.shutdown();
+		server = null;
+		executor = null;
+	}
+
+	/**
+	 * @return The port served on
+	 */
+	public synchronized int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return A virtual thread per task executor (looked up by reflection, so that this still compiles and runs
+	 * on Java 17) or a fixed pool without them
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return Executors.newFixedThreadPool(POOL_THREADS, runnable -> {
+				Thread thread = new Thread(runnable, "CryptingServer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * A request that is refused, the message is sent to the client
+	 */
+	private static class HttpError extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * An operation on uploaded files
+	 */
+	private interface Operation {
+		/**
+		 * @param exchange The request, to send the response to
+		 * @param query The parameters of the query string
+		 * @param parts The uploaded files by the name of their form field
+		 */
+		void run(HttpExchange exchange, Map<String, String> query, Map<String, File> parts) throws IOException, HttpError;
+	}
+
+	/**
+	 * Runs an operation if fewer than maxConcurrent are running, with its uploads in temporary files that are
+	 * removed afterwards
+	 */
+	private void handleOperation(HttpExchange exchange, Operation operation) throws IOException {
+		Map<String, File> parts = new HashMap<>();
+		boolean acquired = false;
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) throw new HttpError(405, "Only POST is supported");
+			acquired = operations.tryAcquire();
+			if (!acquired) {
+				exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+				throw new HttpError(503, "Too many requests, try again later");
+			}
+			readParts(exchange, parts);
+			operation.run(exchange, parseQuery(exchange.getRequestURI().getRawQuery()), parts);
+		} catch (HttpError e) {
+			sendText(exchange, e.status, e.getMessage());
+		} catch (OutOfMemoryError e) {
+			sendText(exchange, 503, "Not enough memory, try smaller images");
+		} catch (IOException | RuntimeException e) {
+			// the response may already be under way, then the client only sees the connection close
+			LOG.log(Level.WARNING, "Failed " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+			sendText(exchange, 500, "Failed because: " + e.getLocalizedMessage());
+		} finally {
+			if (acquired) operations.release();
+			for (File f : parts.values()) f.delete();
+			exchange.close();
+		}
+	}
+
+	private void keygen(HttpExchange exchange, Map<String, String> query, Map<String, File> parts) throws IOException, HttpError {
+		int width = intParameter(query, "width");
+		int height = intParameter(query, "height");
+		if (width < 1 || height < 1 || 4L * width * height > maxPixels) throw new HttpError(400, "Invalid size " + width + "x" + height);
+		BitShare key = KeyPool.getDefault().takeOrGenerate(width, height);
+		sendShare(exchange, key, "key.png");
+	}
+
+	private void encrypt(HttpExchange exchange, Map<String, String> query, Map<String, File> parts) throws IOException, HttpError {
+		File keyFile = part(parts, "key");
+		File srcFile = part(parts, "source");
+		int[] keySize = checkPixels(keyFile);
+		int[] srcSize = checkPixels(srcFile);
+		if (srcSize[0] > keySize[0] / 2 || srcSize[1] > keySize[1] / 2) throw new HttpError(400, "Source too large for the key");
+		File encFile = File.createTempFile("vc-enc", ".png");
+		try {
+			if (!StreamingEncryption.encrypt(keyFile, srcFile, encFile, StreamingEncryption.DEFAULT_BAND_ROWS, writer, dither(query))) {
+				throw new HttpError(400, "Not a valid key or source too large for the key");
+			}
+			sendHeaders(exchange, "image/png", "encrypted.png");
+			try (OutputStream out = exchange.getResponseBody()) {
+				Files.copy(encFile.toPath(), out);
+			}
+		} finally {
+			encFile.delete();
+		}
+	}
+
+	private void decrypt(HttpExchange exchange, Map<String, String> query, Map<String, File> parts) throws IOException, HttpError {
+		File keyFile = part(parts, "key");
+		File encFile = part(parts, "encrypted");
+		if (!Arrays.equals(checkPixels(keyFile), checkPixels(encFile))) throw new HttpError(400, "Key and encrypted image not the same size");
+		BitShare key = Crypting.loadAndCheckEncrShare(keyFile);
+		if (key == null) throw new HttpError(400, "Not a valid key file");
+		BitShare enc = Crypting.loadAndCheckEncrShare(encFile);
+		if (enc == null) throw new HttpError(400, "Not an encrypted image");
+		BitShare clean = Crypting.decryptImage(key, enc);
+		if (clean == null) throw new HttpError(400, "Key and encrypted image not the same size");
+		sendShare(exchange, clean, "decrypted.png");
+	}
+
+	private void stegano(HttpExchange exchange, Map<String, String> query, Map<String, File> parts) throws IOException, HttpError {
+		File firstFile = part(parts, "first");
+		File secondFile = part(parts, "second");
+		File hideFile = part(parts, "hide");
+		// same as SteganoFrame: all three are resized to the biggest dimension
+		int width = 0;
+		int height = 0;
+		for (File f : new File[] {firstFile, secondFile, hideFile}) {
+			int[] size = imageSize(f);
+			width = Math.max(width, size[0]);
+			height = Math.max(height, size[1]);
+		}
+		if (4L * width * height > maxPixels) throw new HttpError(413, "Images too large");
+		Halftone.Method dither = dither(query);
+		BitShare first = Crypting.loadAndCheckSourceShare(firstFile, width, height, true, dither);
+		BitShare second = Crypting.loadAndCheckSourceShare(secondFile, width, height, true, dither);
+		BitShare toHide = Crypting.loadAndCheckSourceShare(hideFile, width, height, true, dither);
+		if (first == null || second == null || toHide == null) throw new HttpError(400, "Not fit for steganography");
+
+		BitShare[] shares = Crypting.hideImage(first, second, toHide);
+		sendHeaders(exchange, "application/zip", "stegano.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(exchange.getResponseBody())) {
+			// the pngs are deflated already
+			zip.setLevel(0);
+			zip.putNextEntry(new ZipEntry("first.png"));
+			writer.write(ShareBandImage.of(shares[0]), zip, Progress.NONE);
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("second.png"));
+			writer.write(ShareBandImage.of(shares[1]), zip, Progress.NONE);
+			zip.closeEntry();
+		}
+	}
+
+	/**
+	 * Serves a file below the root, index.html for directories
+	 */
+	private void handleStatic(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) throw new HttpError(405, "Only GET is supported");
+			Path rootPath = root.toPath().toAbsolutePath().normalize();
+			Path path = rootPath.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+			// no way out of the root with ..
+			if (!path.startsWith(rootPath)) throw new HttpError(404, "Not found");
+			if (Files.isDirectory(path)) path = path.resolve("index.html");
+			if (!Files.isRegularFile(path)) throw new HttpError(404, "Not found");
+
+			String type = Files.probeContentType(path);
+			exchange.getResponseHeaders().set("Content-Type", type != null ? type : contentType(path.getFileName().toString()));
+			if (method.equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, Files.size(path));
+			try (OutputStream out = exchange.getResponseBody()) {
+				Files.copy(path, out);
+			}
+		} catch (HttpError e) {
+			sendText(exchange, e.status, e.getMessage());
+		} catch (FileNotFoundException e) {
+			sendText(exchange, 404, "Not found");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @return The content type of the files of the pages, for systems that can't probe them
+	 */
+	private static String contentType(String fileName) {
+		String name = fileName.toLowerCase(Locale.ROOT);
+		if (name.endsWith(".html")) return "text/html; charset=utf-8";
+		if (name.endsWith(".css")) return "text/css";
+		if (name.endsWith(".js")) return "application/javascript";
+		if (name.endsWith(".png")) return "image/png";
+		if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
+		if (name.endsWith(".svg")) return "image/svg+xml";
+		return "application/octet-stream";
+	}
+
+	/**
+	 * Streams the file parts of a multipart/form-data request into temporary files, at most maxUploadBytes
+	 * @param parts Receives the files by the name of their form field, also the ones read before a failure
+	 */
+	private void readParts(HttpExchange exchange, Map<String, File> parts) throws IOException, HttpError {
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (length != null) {
+			long bytes;
+			try {
+				bytes = Long.parseLong(length.trim());
+			} catch (NumberFormatException e) {
+				bytes = -1;
+			}
+			if (bytes < 0) throw new HttpError(400, "Invalid Content-Length");
+			if (bytes > maxUploadBytes) throw new HttpError(413, "Upload too large");
+		}
+		if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+			// operations without uploads
+			return;
+		}
+		String boundary = null;
+		for (String parameter : contentType.split(";")) {
+			parameter = parameter.trim();
+			if (parameter.toLowerCase(Locale.ROOT).startsWith("boundary=")) boundary = unquote(parameter.substring(9));
+		}
+		if (boundary == null || boundary.isEmpty()) throw new HttpError(400, "No multipart boundary");
+
+		MultipartReader reader = new MultipartReader(new BufferedInputStream(exchange.getRequestBody(), BUFFER_SIZE), boundary, maxUploadBytes);
+		for (Map<String, String> headers = reader.nextPart(); headers != null; headers = reader.nextPart()) {
+			String name = null;
+			String disposition = headers.getOrDefault("content-disposition", "");
+			for (String parameter : disposition.split(";")) {
+				parameter = parameter.trim();
+				if (parameter.startsWith("name=")) name = unquote(parameter.substring(5));
+			}
+			if (name == null || parts.containsKey(name)) {
+				reader.skipPart();
+				continue;
+			}
+			File f = File.createTempFile("vc-upload", ".tmp");
+			parts.put(name, f);
+			try (OutputStream out = Files.newOutputStream(f.toPath())) {
+				reader.copyPart(out);
+			}
+		}
+	}
+
+	private static String unquote(String value) {
+		return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+	}
+
+	/**
+	 * Reads the parts of a multipart body one after the other without keeping them in memory
+	 */
+	private static class MultipartReader {
+		private final InputStream in;
+		// the delimiter in front of every part but the first, which may lack the CRLF
+		private final byte[] delimiter;
+		// KMP failure function of the delimiter
+		private final int[] fallback;
+		private final long maxBytes;
+		private long bytes = 0;
+		private boolean done = false;
+
+		MultipartReader(InputStream in, String boundary, long maxBytes) throws IOException, HttpError {
+			this.in = in;
+			this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+			this.maxBytes = maxBytes;
+			// fallback[i]: the longest proper prefix of the first i bytes of the delimiter that is also their suffix
+			fallback = new int[delimiter.length + 1];
+			fallback[0] = -1;
+			for (int i = 1, j = -1; i <= delimiter.length; ++i) {
+				while (j >= 0 && delimiter[j] != delimiter[i - 1]) j = fallback[j];
+				fallback[i] = ++j;
+			}
+			// skips the preamble, the first delimiter usually starts the body without CRLF
+			copyPart(OutputStream.nullOutputStream(), 2);
+		}
+
+		private int read() throws IOException, HttpError {
+			if (++bytes > maxBytes) throw new HttpError(413, "Upload too large");
+			return in.read();
+		}
+
+		/**
+		 * Reads the headers of the next part, right behind a delimiter
+		 * @return The headers with lower case names or null after the last part
+		 */
+		Map<String, String> nextPart() throws IOException, HttpError {
+			if (done) return null;
+			String line = readLine();
+			// "--" after the delimiter closes the body
+			if (line.startsWith("--")) {
+				done = true;
+				return null;
+			}
+			Map<String, String> headers = new HashMap<>();
+			for (line = readLine(); !line.isEmpty(); line = readLine()) {
+				int colon = line.indexOf(':');
+				if (colon > 0) headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+			}
+			return headers;
+		}
+
+		private String readLine() throws IOException, HttpError {
+			StringBuilder line = new StringBuilder();
+			for (int b = read(); b != '\n'; b = read()) {
+				if (b < 0) throw new HttpError(400, "Malformed multipart body");
+				if (line.length() > 8192) throw new HttpError(400, "Multipart header too long");
+				if (b != '\r') line.append((char)b);
+			}
+			return line.toString();
+		}
+
+		/**
+		 * Copies the content of the current part up to the next delimiter
+		 */
+		void copyPart(OutputStream out) throws IOException, HttpError {
+			copyPart(out, 0);
+		}
+
+		/**
+		 * Copies up to the next delimiter, as if the first matched bytes of it had just been read
+		 */
+		private void copyPart(OutputStream out, int matched) throws IOException, HttpError {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int length = 0;
+			while (matched < delimiter.length) {
+				int b = read();
+				if (b < 0) throw new HttpError(400, "Malformed multipart body");
+				while (matched > 0 && delimiter[matched] != (byte)b) {
+					// the bytes the shorter match doesn't cover were content after all
+					int keep = fallback[matched];
+					for (int i = 0; i < matched - keep; ++i) {
+						if (length == buffer.length) {
+							out.write(buffer, 0, length);
+							length = 0;
+						}
+						buffer[length++] = delimiter[i];
+					}
+					matched = keep;
+				}
+				if (delimiter[matched] == (byte)b) {
+					++matched;
+				} else {
+					if (length == buffer.length) {
+						out.write(buffer, 0, length);
+						length = 0;
+					}
+					buffer[length++] = (byte)b;
+				}
+			}
+			out.write(buffer, 0, length);
+		}
+
+		/**
+		 * Skips the content of the current part
+		 */
+		void skipPart() throws IOException, HttpError {
+			copyPart(OutputStream.nullOutputStream());
+		}
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<>();
+		if (rawQuery == null) return query;
+		for (String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals < 0) continue;
+			query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+		}
+		return query;
+	}
+
+	private static int intParameter(Map<String, String> query, String name) throws HttpError {
+		try {
+			return Integer.parseInt(query.getOrDefault(name, ""));
+		} catch (NumberFormatException e) {
+			throw new HttpError(400, "Missing or invalid parameter " + name);
+		}
+	}
+
+	/**
+	 * @return The dither parameter, THRESHOLD if there is none
+	 */
+	private static Halftone.Method dither(Map<String, String> query) throws HttpError {
+		try {
+			return Halftone.Method.valueOf(query.getOrDefault("dither", "threshold").toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new HttpError(400, "Unknown dither method " + query.get("dither"));
+		}
+	}
+
+	private static File part(Map<String, File> parts, String name) throws HttpError {
+		File f = parts.get(name);
+		if (f == null) throw new HttpError(400, "Missing part " + name);
+		return f;
+	}
+
+	/**
+	 * @return The width and height of an uploaded image, read from its header only
+	 */
+	private static int[] imageSize(File f) throws IOException, HttpError {
+		try (ImageInputStream stream = ImageIO.createImageInputStream(f)) {
+			Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+			if (readers == null || !readers.hasNext()) throw new HttpError(400, "Not an image");
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream);
+				return new int[] {reader.getWidth(0), reader.getHeight(0)};
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Refuses images with more than maxPixels before they are decoded
+	 * @return The width and height of the image, see imageSize
+	 */
+	private int[] checkPixels(File f) throws IOException, HttpError {
+		int[] size = imageSize(f);
+		if ((long)size[0] * size[1] > maxPixels) throw new HttpError(413, "Image too large");
+		return size;
+	}
+
+	private static void sendHeaders(HttpExchange exchange, String type, String fileName) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", type);
+		exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+		// 0: chunked, the length isn't known before the png is written
+		exchange.sendResponseHeaders(200, 0);
+	}
+
+	private void sendShare(HttpExchange exchange, BitShare share, String fileName) throws IOException {
+		sendHeaders(exchange, "image/png", fileName);
+		try (OutputStream out = exchange.getResponseBody()) {
+			writer.write(ShareBandImage.of(share), out, Progress.NONE);
+		}
+	}
+
+	/**
+	 * Sends a plain text response, unless the headers of another one were sent already
+	 */
+	private static void sendText(HttpExchange exchange, int status, String message) {
+		if (exchange.getResponseCode() != -1) return;
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (IOException e) {
+			// the client is gone
+		}
+	}
+}
@@ -4,15 +4,12 @@ import java.awt.Dimension;
 import java.awt.FocusTraversalPolicy;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -21,11 +18,16 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileFilter;
 
 
 public class DecryptFrame extends JFrame implements ActionListener {
 	private static final long serialVersionUID = 1L;
+	// the first preview of a large decrypted image is about this large, the last one samples every 8th block
+	// (finer ones take about as long as decrypting the whole share, which works on 64 pixels at once)
+	private static final int PREVIEW_SIZE = 256;
+	private static final int FINEST_PREVIEW_STEP = 8;
 	private JPanel pnlAll = new JPanel();
 	private JPanel pnlKeyFile = new JPanel();
 	private JPanel pnlEncFile = new JPanel();
@@ -34,8 +36,8 @@ public class DecryptFrame extends JFrame implements ActionListener {
 	private JPanel pnlScrollClean = new JPanel();
 	
 	private JLabel lblDescr = new JLabel("<html>Enter a key file and an encrypted image below to decrypt it. You could also decrypt it by printing the key and the encrypted image on transparent paper and overlaying them manually.</html>");
-	private JLabel lblOverlay = new JLabel(new ImageIcon(), JLabel.CENTER);
-	private JLabel lblClean = new JLabel(new ImageIcon(), JLabel.CENTER);
+	private ShareView viewOverlay = new ShareView();
+	private ShareView viewClean = new ShareView();
 	private JTextField tfKey = new JTextField();
 	private JTextField tfEncr = new JTextField();
 	private JButton btnSelectKey = new JButton("Select keyfile");
@@ -43,15 +45,32 @@ public class DecryptFrame extends JFrame implements ActionListener {
 	private JButton btnDecrypt = new JButton("Decrypt");
 	private JButton btnSaveOverlay = new JButton("Save overlayed image to file");
 	private JButton btnSaveClean = new JButton("Save decrypted image to file");
-	private JScrollPane scrOverlay = new JScrollPane(lblOverlay);
-	private JScrollPane scrClean = new JScrollPane(lblClean);
+	private JScrollPane scrOverlay = new JScrollPane(viewOverlay);
+	private JScrollPane scrClean = new JScrollPane(viewClean);
+	private JobPanel pnlJob = new JobPanel(btnSelectKey, btnSelectEncr, btnDecrypt, btnSaveOverlay, btnSaveClean);
 	
 	private JFileChooser fileChooser = new JFileChooser();
-	private BufferedImage imgOverlay = null;
-	private BufferedImage imgClean = null;
+	private BitShare shareOverlay = null;
+	private BitShare shareClean = null;
 	File fKeyFile = null;
 	File fEncrFile = null;
 	
+	/**
+	 * Shows a share on the event dispatch thread, while the job goes on
+	 */
+	private static void show(ShareView view, BitShare share, int pixelSize) {
+		SwingUtilities.invokeLater(() -> view.setShare(share, pixelSize));
+	}
+	
+	/**
+	 * @return The step of the first preview of a decrypted image, so that it is about PREVIEW_SIZE pixels large,
+	 * or 0 if the image is small enough to be decrypted right away
+	 */
+	static int previewStep(int width, int height) {
+		int step = Integer.highestOneBit(Math.max(1, Math.max(width, height) / PREVIEW_SIZE));
+		return step > FINEST_PREVIEW_STEP ? step : 0;
+	}
+	
 	public DecryptFrame(JFrame parent) {
 		// size
 		tfKey.setMaximumSize(new Dimension(tfKey.getMaximumSize().width, tfKey.getPreferredSize().height));
@@ -67,6 +86,7 @@ public class DecryptFrame extends JFrame implements ActionListener {
 		pnlKeyFile.setAlignmentX(LEFT_ALIGNMENT);
 		pnlEncFile.setAlignmentX(LEFT_ALIGNMENT);
 		pnlScrolls.setAlignmentX(LEFT_ALIGNMENT);
+		pnlJob.setAlignmentX(LEFT_ALIGNMENT);
 		
 		// action listener
 		btnSelectKey.addActionListener(this);
@@ -125,6 +145,7 @@ public class DecryptFrame extends JFrame implements ActionListener {
 		pnlAll.add(btnDecrypt);
 		pnlAll.add(Box.createVerticalStrut(10));
 		pnlAll.add(pnlScrolls);
+		pnlAll.add(pnlJob);
 		
 		setFocusTraversalPolicy(new MyFocusTraversalPolicy());
 		
@@ -145,36 +166,50 @@ public class DecryptFrame extends JFrame implements ActionListener {
 				return;
 			}
 			
-			BufferedImage imgKey = Crypting.loadAndCheckEncrFile(fKeyFile);
-			if (imgKey == null) {
-				JOptionPane.showMessageDialog(this, fKeyFile.getName() + " is not a valid key file", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-			BufferedImage imgEnc = Crypting.loadAndCheckEncrFile(fEncrFile);
-			if (imgEnc == null) {
-				JOptionPane.showMessageDialog(this, fEncrFile.getName() + " is not an encrypted image", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-			
-			imgOverlay = Crypting.overlayImages(imgKey, imgEnc);
-			if (imgOverlay == null) {
-				JOptionPane.showMessageDialog(this, "Decryption failed - key and encrypted image not the same size?", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-			imgClean = Crypting.decryptImage(imgOverlay);
-			if (imgClean == null) {
-				JOptionPane.showMessageDialog(this, "Decryption failed - key and encrypted image not the same size?", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-
-			lblOverlay.setIcon(new ImageIcon(imgOverlay));
-			lblClean.setIcon(new ImageIcon(imgClean));
-			
-			
-			btnSaveOverlay.setEnabled(true);
-			btnSaveClean.setEnabled(true);
+			File fKey = fKeyFile;
+			File fEncr = fEncrFile;
+			pnlJob.run(new CryptingJob<BitShare[]>(this, job -> {
+				// selecting the same files again takes the shares and the decryption from the cache
+				ShareCache cache = ShareCache.getDefault();
+				try {
+					job.step("Loading key");
+					BitShare key = cache.getEncrShare(fKey);
+					if (key == null) throw new CryptingJob.Failure(fKey.getName() + " is not a valid key file");
+					job.step("Loading encrypted image");
+					BitShare enc = cache.getEncrShare(fEncr);
+					if (enc == null) throw new CryptingJob.Failure(fEncr.getName() + " is not an encrypted image");
+					
+					if (key.getWidth() != enc.getWidth() || key.getHeight() != enc.getHeight() || key.getWidth() % 2 != 0 || key.getHeight() % 2 != 0) {
+						throw new CryptingJob.Failure("Decryption failed - key and encrypted image not the same size?");
+					}
+					
+					// large shares first get coarse previews that are refined until the decryption is done
+					int width = key.getWidth() / 2, height = key.getHeight() / 2;
+					for (int step = previewStep(width, height); step >= FINEST_PREVIEW_STEP; step /= 2) {
+						job.step("Previewing 1:" + step);
+						BitShare preview = Crypting.decryptPreview(key, enc, step, job);
+						show(viewClean, preview, step);
+					}
+					job.step("Decrypting");
+					BitShare clean = cache.getDecrypted(fKey, fEncr, job);
+					if (clean == null) throw new CryptingJob.Failure("Decryption failed - key and encrypted image not the same size?");
+					show(viewClean, clean, 1);
+					job.step("Overlaying");
+					return new BitShare[]{Crypting.overlayImages(key, enc, job), clean};
+				} catch (IOException ex) {
+					throw new CryptingJob.Failure("Could not read " + ex.getLocalizedMessage());
+				}
+			}, shares -> {
+				shareOverlay = shares[0];
+				shareClean = shares[1];
+				viewOverlay.setShare(shareOverlay);
+				viewClean.setShare(shareClean);
+				
+				btnSaveOverlay.setEnabled(true);
+				btnSaveClean.setEnabled(true);
+			}));
 		} else if (e.getActionCommand().equals(btnSaveOverlay.getText())) {
-			if (imgOverlay == null) return;
+			if (shareOverlay == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    fileChooser.setDialogTitle("Save overlay as..");
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
@@ -182,14 +217,10 @@ public class DecryptFrame extends JFrame implements ActionListener {
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgOverlay, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareOverlay, f));
 		    }
 		} else if (e.getActionCommand().equals(btnSaveClean.getText())) {
-			if (imgClean == null) return;
+			if (shareClean == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    fileChooser.setDialogTitle("Save decrypted image as..");
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
@@ -197,11 +228,7 @@ public class DecryptFrame extends JFrame implements ActionListener {
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgClean, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareClean, f));
 		    }
 		} else if (e.getActionCommand().equals(btnSelectKey.getText())) {
 			fileChooser.setDialogTitle("Open keyfile..");
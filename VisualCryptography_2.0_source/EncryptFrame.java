@@ -4,16 +4,14 @@ import java.awt.Dimension;
 import java.awt.FocusTraversalPolicy;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -31,17 +29,19 @@ public class EncryptFrame extends JFrame implements ActionListener {
 	private JPanel pnlImgFile = new JPanel();
 	
 	private JLabel lblDescr = new JLabel("<html>Add a valid key file and a valid source image (png, jpg or gif, will be converted to b/w, not larger than half the keyfile) below to encrypt the source image.</html>");
-	private JLabel lblImg = new JLabel(new ImageIcon(), JLabel.CENTER);
+	private ShareView viewEncr = new ShareView();
 	private JTextField tfKey = new JTextField();
 	private JTextField tfImage = new JTextField();
+	private JCheckBox cbDither = new JCheckBox("Greyscale photo (dither instead of converting to b/w)");
 	private JButton btnSelectKey = new JButton("Select keyfile");
 	private JButton btnSelectImage = new JButton("Select image");
 	private JButton btnEncrypt = new JButton("Encrypt");
 	private JButton btnSave = new JButton("Save encrypted image to file");
-	private JScrollPane scrImage = new JScrollPane(lblImg);
+	private JScrollPane scrImage = new JScrollPane(viewEncr);
+	private JobPanel pnlJob = new JobPanel(btnSelectKey, btnSelectImage, cbDither, btnEncrypt, btnSave);
 	
 	private JFileChooser fileChooser = new JFileChooser();
-	private BufferedImage imgEncr = null;
+	private BitShare shareEncr = null;
 	File fKeyFile = null;
 	File fSrcFile = null;
 	
@@ -59,8 +59,10 @@ public class EncryptFrame extends JFrame implements ActionListener {
 		lblDescr.setAlignmentX(LEFT_ALIGNMENT);
 		pnlKeyFile.setAlignmentX(LEFT_ALIGNMENT);
 		pnlImgFile.setAlignmentX(LEFT_ALIGNMENT);
+		cbDither.setAlignmentX(LEFT_ALIGNMENT);
 		scrImage.setAlignmentX(LEFT_ALIGNMENT);
 		btnSave.setAlignmentX(LEFT_ALIGNMENT);
+		pnlJob.setAlignmentX(LEFT_ALIGNMENT);
 		
 		// action listener
 		btnSelectKey.addActionListener(this);
@@ -101,10 +103,12 @@ public class EncryptFrame extends JFrame implements ActionListener {
 		pnlAll.add(lblDescr);
 		pnlAll.add(pnlKeyFile);
 		pnlAll.add(pnlImgFile);
+		pnlAll.add(cbDither);
 		pnlAll.add(btnEncrypt);
 		pnlAll.add(Box.createVerticalStrut(10));
 		pnlAll.add(scrImage);
 		pnlAll.add(btnSave);
+		pnlAll.add(pnlJob);
 		
 		setFocusTraversalPolicy(new MyFocusTraversalPolicy());
 		
@@ -124,23 +128,31 @@ public class EncryptFrame extends JFrame implements ActionListener {
 				JOptionPane.showMessageDialog(this, "File not found", "ERROR", JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			BufferedImage imgKey = Crypting.loadAndCheckEncrFile(fKeyFile);
-			if (imgKey == null) {
-				JOptionPane.showMessageDialog(this, fKeyFile.getName() + " is not a valid key file", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-			BufferedImage imgSrc = Crypting.loadAndCheckSource(fSrcFile, imgKey.getWidth() / 2, imgKey.getHeight() / 2, true);
-			if (imgSrc == null) {
-				JOptionPane.showMessageDialog(this, fSrcFile.getName() + " is not fit for encryption", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-			imgEncr = Crypting.encryptImage(imgKey, imgSrc);
-			lblImg.setIcon(new ImageIcon(imgEncr));
-			btnSave.setEnabled(true);
-			
-			
+			File fKey = fKeyFile;
+			File fSrc = fSrcFile;
+			Halftone.Method dither = cbDither.isSelected() ? Halftone.Method.DIFFUSION : Halftone.Method.THRESHOLD;
+			pnlJob.run(new CryptingJob<BitShare>(this, job -> {
+				// selecting the same files again takes the shares from the cache
+				ShareCache cache = ShareCache.getDefault();
+				try {
+					job.step("Loading key");
+					BitShare key = cache.getEncrShare(fKey);
+					if (key == null) throw new CryptingJob.Failure(fKey.getName() + " is not a valid key file");
+					job.step("Loading source image");
+					BitShare src = cache.getSourceShare(fSrc, key.getWidth() / 2, key.getHeight() / 2, true, dither);
+					if (src == null) throw new CryptingJob.Failure(fSrc.getName() + " is not fit for encryption");
+					job.step("Encrypting");
+					return Crypting.encryptImage(key, src, job);
+				} catch (IOException ex) {
+					throw new CryptingJob.Failure("Could not read " + ex.getLocalizedMessage());
+				}
+			}, result -> {
+				shareEncr = result;
+				viewEncr.setShare(shareEncr);
+				btnSave.setEnabled(true);
+			}));
 		} else if (e.getActionCommand().equals(btnSave.getText())) {
-			if (imgEncr == null) return;
+			if (shareEncr == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    fileChooser.setDialogTitle("Save as..");
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
@@ -148,11 +160,7 @@ public class EncryptFrame extends JFrame implements ActionListener {
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgEncr, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareEncr, f));
 		    }
 		} else if (e.getActionCommand().equals(btnSelectKey.getText())) {
 			this.fileChooser.setDialogTitle("Open keyfile..");
@@ -176,7 +184,8 @@ public class EncryptFrame extends JFrame implements ActionListener {
 	class MyFocusTraversalPolicy extends FocusTraversalPolicy {
 	    public Component getComponentAfter(Container focusCycleRoot, Component aComponent) {
 	        if(aComponent.equals(btnSelectKey)) return btnSelectImage;
-	        else if(aComponent.equals(btnSelectImage)) return btnEncrypt;
+	        else if(aComponent.equals(btnSelectImage)) return cbDither;
+	        else if(aComponent.equals(cbDither)) return btnEncrypt;
 	        else if(aComponent.equals(btnEncrypt) && btnSave.isEnabled()) return btnSave;
 	        return btnSelectKey;
 	    }
@@ -184,7 +193,8 @@ public class EncryptFrame extends JFrame implements ActionListener {
 	    public Component getComponentBefore(Container focusCycleRoot, Component aComponent) {
 	        if(aComponent.equals(btnSelectKey) && btnSave.isEnabled()) return btnSave;
 	        else if(aComponent.equals(btnSelectImage)) return btnSelectKey;
-	        else if(aComponent.equals(btnEncrypt)) return btnSelectImage;
+	        else if(aComponent.equals(btnEncrypt)) return cbDither;
+	        else if(aComponent.equals(cbDither)) return btnSelectImage;
 	        return btnEncrypt;
 	    }
 	    
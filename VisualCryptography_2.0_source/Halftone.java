@@ -0,0 +1,214 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+
+/**
+ * Turns greyscale images (e.g. photos) into b/w shares to be encrypted. Unlike the brightness threshold of
+ * loadAndCheckSource, the grey levels survive as the density of black pixels. Transparent pixels are white,
+ * semi-transparent ones are blended with white.
+ * An instance dithers one image, possibly band by band: bands have to be drawn top to bottom, so that the error
+ * diffusion continues across them.
+ */
+public class Halftone {
+	/**
+	 * How grey pixels become black or white
+	 */
+	public enum Method {
+		/** black if the brightness is at most half, like loadAndCheckSource */
+		THRESHOLD,
+		/** compares the brightness with an 8x8 Bayer matrix, fast and independent for every pixel */
+		ORDERED,
+		/** Floyd-Steinberg error diffusion, the best looking, rows are processed in a staggered wave */
+		DIFFUSION
+	}
+
+	// ORDERED: 8x8 Bayer matrix, a pixel is black if its brightness is below (2 * entry + 1) * 2
+	private static final int[] BAYER = {
+		 0, 32,  8, 40,  2, 34, 10, 42,
+		48, 16, 56, 24, 50, 18, 58, 26,
+		12, 44,  4, 36, 14, 46,  6, 38,
+		60, 28, 52, 20, 62, 30, 54, 22,
+		 3, 35, 11, 43,  1, 33,  9, 41,
+		51, 19, 59, 27, 49, 17, 57, 25,
+		15, 47,  7, 39, 13, 45,  5, 37,
+		63, 31, 55, 23, 61, 29, 53, 21
+	};
+	// DIFFUSION: pixels a row tells the row below it about at once
+	private static final int PROGRESS_STEP = 64;
+
+	private final Method method;
+	private final int width;
+	// the brightness of an opaque pixel, null for the luminance
+	private final IntUnaryOperator brightness;
+	// DIFFUSION: 16 times the error diffused into the next row, index x + 1 is pixel x
+	private final int[] carry;
+
+	/**
+	 * @param method How grey pixels become black or white
+	 * @param width The width of the image (of all its bands)
+	 */
+	public Halftone(Method method, int width) {
+		this(method, width, null);
+	}
+
+	/**
+	 * Dithers a single channel instead of the luminance, e.g. for the planes of ColorShares
+	 * @param method How grey pixels become black or white
+	 * @param width The width of the image (of all its bands)
+	 * @param brightness The brightness (0 black to 255 white) of an opaque ARGB pixel
+	 */
+	public Halftone(Method method, int width, IntUnaryOperator brightness) {
+		this.method = method;
+		this.width = width;
+		this.brightness = brightness;
+		this.carry = new int[width + 2];
+	}
+
+	/**
+	 * Dithers a whole image
+	 * @param img The image
+	 * @param method How grey pixels become black or white
+	 * @return The share, as large as the image
+	 */
+	public static BitShare toShare(BufferedImage img, Method method) {
+		BitShare share = new BitShare(img.getWidth(), img.getHeight());
+		new Halftone(method, img.getWidth()).draw(share, img, 0, 0);
+		return share;
+	}
+
+	/**
+	 * Dithers the next band of the image into a share (which should be transparent there)
+	 * @param share The share
+	 * @param img The band, all rows of the image below the last band drawn
+	 * @param offsetX Where the left of the band goes in the share
+	 * @param offsetY Where the top of the band goes in the share
+	 * @throws IllegalArgumentException If the band doesn't fit into the share or isn't as wide as the image
+	 */
+	public void draw(BitShare share, BufferedImage img, int offsetX, int offsetY) {
+		if (img.getWidth() != width) throw new IllegalArgumentException("Band is " + img.getWidth() + " wide, not " + width);
+		if (offsetX < 0 || offsetY < 0 || offsetX + width > share.getWidth() || offsetY + img.getHeight() > share.getHeight()) {
+			throw new IllegalArgumentException("Image doesn't fit into the share");
+		}
+		switch (method) {
+		case ORDERED:
+			drawOrdered(share, img, offsetX, offsetY);
+			break;
+		case DIFFUSION:
+			drawDiffused(share, img, offsetX, offsetY);
+			break;
+		default:
+			share.draw(img, brightness == null ? Crypting::isBlackSourcePixel : iRgb -> grey(iRgb) < 128, offsetX, offsetY);
+		}
+	}
+
+	private void drawOrdered(BitShare share, BufferedImage img, int offsetX, int offsetY) {
+		IntStream.range(0, img.getHeight()).parallel().forEach(y -> {
+			int[] rgb = new int[width];
+			int[] grey = new int[width];
+			readGrey(img, y, rgb, grey);
+			long[] row = share.getRow(offsetY + y);
+			// the matrix is aligned to the share, so bands and centered images line up
+			int bayerRow = ((offsetY + y) & 7) << 3;
+			for (int x = 0; x < width; ++x) {
+				int sx = offsetX + x;
+				if (grey[x] < (BAYER[bayerRow + (sx & 7)] * 2 + 1) * 2) row[sx >>> 6] |= 1L << sx;
+			}
+		});
+	}
+
+	/**
+	 * Floyd-Steinberg on all cores: pixel x of a row only depends on the row above up to pixel x + 1, so rows are
+	 * handed out top to bottom and every row follows the one above it as closely as that allows. The error rows
+	 * are kept in a ring, a row is only reused when the row that read it is done.
+	 */
+	private void drawDiffused(BitShare share, BufferedImage img, int offsetX, int offsetY) {
+		int height = img.getHeight();
+		if (height == 0) return;
+		int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), height));
+		// a row can only start when all rows but the workers - 1 above it are done, so this is enough
+		int[][] errors = new int[workers + 2][];
+		for (int i = 0; i < errors.length; ++i) errors[i] = new int[width + 2];
+		System.arraycopy(carry, 0, errors[0], 0, carry.length);
+
+		AtomicInteger nextRow = new AtomicInteger();
+		AtomicIntegerArray done = new AtomicIntegerArray(height);
+		IntStream.range(0, workers).parallel().forEach(worker -> {
+			int[] rgb = new int[width];
+			int[] grey = new int[width];
+			for (int y = nextRow.getAndIncrement(); y < height; y = nextRow.getAndIncrement()) {
+				readGrey(img, y, rgb, grey);
+				int[] in = errors[y % errors.length];
+				int[] out = errors[(y + 1) % errors.length];
+				Arrays.fill(out, 0);
+				long[] row = share.getRow(offsetY + y);
+
+				int right = 0;
+				int ready = y == 0 ? width : 0;
+				for (int x = 0; x < width; ++x) {
+					if (x + 2 > ready && ready < width) ready = awaitRow(done, y - 1, Math.min(x + 2, width));
+					int value = grey[x] + ((in[x + 1] + right + 8) >> 4);
+					int error;
+					if (value < 128) {
+						int sx = offsetX + x;
+						row[sx >>> 6] |= 1L << sx;
+						error = value;
+					} else {
+						error = value - 255;
+					}
+					right = error * 7;
+					out[x] += error * 3;
+					out[x + 1] += error * 5;
+					out[x + 2] += error;
+					if ((x + 1) % PROGRESS_STEP == 0) done.set(y, x + 1);
+				}
+				done.set(y, width);
+			}
+		});
+		System.arraycopy(errors[height % errors.length], 0, carry, 0, carry.length);
+	}
+
+	/**
+	 * Waits until a row has done at least the given amount of pixels
+	 * @return The pixels the row has done
+	 */
+	private static int awaitRow(AtomicIntegerArray done, int y, int pixels) {
+		int spins = 0;
+		int ready;
+		while ((ready = done.get(y)) < pixels) {
+			if (++spins % 1000 == 0) {
+				Thread.yield();
+			} else {
+				Thread.onSpinWait();
+			}
+		}
+		return ready;
+	}
+
+	/**
+	 * Reads the brightness (0 black to 255 white) of a row, blended with white by the alpha
+	 */
+	private void readGrey(BufferedImage img, int y, int[] rgb, int[] grey) {
+		if (brightness == null && img.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+			// getRGB would treat the samples as linear and brighten them
+			img.getRaster().getSamples(0, y, width, 1, 0, grey);
+			return;
+		}
+		img.getRGB(0, y, width, 1, rgb, 0, width);
+		for (int x = 0; x < width; ++x) grey[x] = grey(rgb[x]);
+	}
+
+	/**
+	 * @return The brightness (0 black to 255 white) of a pixel, blended with white by the alpha
+	 */
+	private int grey(int iRgb) {
+		int alpha = iRgb >>> 24;
+		// same weights as isBlackSourcePixel, in 1/256
+		int value = brightness != null ? brightness.applyAsInt(iRgb)
+				: (((iRgb >> 16) & 0xFF) * 54 + ((iRgb >> 8) & 0xFF) * 183 + (iRgb & 0xFF) * 19) >> 8;
+		return alpha == 255 ? value : (value * alpha + 255 * (255 - alpha)) / 255;
+	}
+}
@@ -0,0 +1,149 @@
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+
+
+/**
+ * Shows the CryptingJobs of a frame: the status of the oldest one, a progress bar and a button to cancel it, and
+ * how many more are queued. While a job started with run() is queued or running, the given components (usually
+ * the buttons of the frame) are disabled. Jobs started with queue() (e.g. saving) leave them enabled, so more
+ * can be queued behind them. The panel is hidden when there's no job.
+ */
+public class JobPanel extends JPanel implements ActionListener, PropertyChangeListener {
+	private static final long serialVersionUID = 1L;
+	private JPanel pnlBar = new JPanel();
+	private JLabel lblStatus = new JLabel(" ");
+	private JProgressBar barProgress = new JProgressBar(0, 100);
+	private JButton btnCancel = new JButton("Cancel");
+
+	private final Component[] busyDisabled;
+	private boolean[] wasEnabled = null;
+	// the jobs not over yet in the order they were queued, whether they disable busyDisabled
+	private final Map<CryptingJob<?>, Boolean> jobs = new LinkedHashMap<>();
+	private int disablingJobs = 0;
+
+	/**
+	 * @param busyDisabled The components to disable while a job runs
+	 */
+	public JobPanel(Component... busyDisabled) {
+		this.busyDisabled = busyDisabled;
+
+		lblStatus.setAlignmentX(LEFT_ALIGNMENT);
+		pnlBar.setAlignmentX(LEFT_ALIGNMENT);
+		barProgress.setMaximumSize(new Dimension(barProgress.getMaximumSize().width, btnCancel.getPreferredSize().height));
+		btnCancel.addActionListener(this);
+
+		pnlBar.setLayout(new BoxLayout(pnlBar, BoxLayout.X_AXIS));
+		pnlBar.add(barProgress);
+		pnlBar.add(Box.createRigidArea(new Dimension(10, 0)));
+		pnlBar.add(btnCancel);
+
+		setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+		add(lblStatus);
+		add(pnlBar);
+		setVisible(false);
+	}
+
+	/**
+	 * Queues a job that changes the frame, disabling busyDisabled until it's over. Only one such job per panel,
+	 * does nothing while one is queued or running.
+	 * @param job The job
+	 */
+	public void run(CryptingJob<?> job) {
+		if (disablingJobs > 0) return;
+		wasEnabled = new boolean[busyDisabled.length];
+		for (int i = 0; i < busyDisabled.length; ++i) {
+			wasEnabled[i] = busyDisabled[i].isEnabled();
+			busyDisabled[i].setEnabled(false);
+		}
+		++disablingJobs;
+		add(job, true);
+	}
+
+	/**
+	 * Queues a job that doesn't change the frame (e.g. saving a share it holds on to), behind the ones queued
+	 * already. The frame stays enabled.
+	 * @param job The job
+	 */
+	public void queue(CryptingJob<?> job) {
+		add(job, false);
+	}
+
+	private void add(CryptingJob<?> job, boolean disabling) {
+		jobs.put(job, disabling);
+		job.addPropertyChangeListener(this);
+		job.setFinished(() -> finished(job));
+		job.queue();
+		showCurrent();
+		setVisible(true);
+		revalidate();
+	}
+
+	/**
+	 * @return Whether a job of this panel is queued or running
+	 */
+	public boolean isBusy() {
+		return !jobs.isEmpty();
+	}
+
+	/**
+	 * @return The oldest job not over yet, the one shown, or null
+	 */
+	private CryptingJob<?> current() {
+		return jobs.isEmpty() ? null : jobs.keySet().iterator().next();
+	}
+
+	private void showCurrent() {
+		CryptingJob<?> job = current();
+		if (job == null) return;
+		String queued = jobs.size() > 1 ? " (" + (jobs.size() - 1) + " more queued)" : "";
+		btnCancel.setEnabled(!job.isCancelled());
+		barProgress.setValue(job.getProgress());
+		lblStatus.setText((job.isCancelled() ? "Cancelling.." : job.getStatus()) + queued);
+	}
+
+	/**
+	 * Called once the job's worker is done, a cancelled one included
+	 */
+	private void finished(CryptingJob<?> job) {
+		job.removePropertyChangeListener(this);
+		if (Boolean.TRUE.equals(jobs.remove(job)) && --disablingJobs == 0) {
+			for (int i = 0; i < busyDisabled.length; ++i) busyDisabled[i].setEnabled(wasEnabled[i]);
+		}
+		if (jobs.isEmpty()) {
+			setVisible(false);
+			revalidate();
+		} else {
+			showCurrent();
+		}
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		CryptingJob<?> job = current();
+		if (e.getSource() == btnCancel && job != null) {
+			// not interrupting, the job stops at the next row it reports. The frame stays disabled until it has.
+			job.cancel(false);
+			showCurrent();
+		}
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent evt) {
+		CryptingJob<?> job = current();
+		if (job == null || evt.getSource() != job || job.isCancelled()) return;
+		if ("progress".equals(evt.getPropertyName()) || "status".equals(evt.getPropertyName())) showCurrent();
+	}
+}
@@ -4,22 +4,17 @@ import java.awt.Dimension;
 import java.awt.FocusTraversalPolicy;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
 import java.text.NumberFormat;
 
-import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFormattedTextField;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
-import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.filechooser.FileFilter;
@@ -34,14 +29,15 @@ public class KeyGenFrame extends JFrame implements ActionListener {
 			"(The generated key will be twice as large).</html>");
 	private JLabel lblWidth = new JLabel("Width:");
 	private JLabel lblHeight = new JLabel("Height:");
-	private JLabel lblImg = new JLabel(new ImageIcon(), JLabel.CENTER);
+	private ShareView viewKey = new ShareView();
 	private JFormattedTextField tfWidth = new JFormattedTextField(NumberFormat.getIntegerInstance());
 	private JFormattedTextField tfHeight = new JFormattedTextField(NumberFormat.getIntegerInstance());
 	private JButton btnGenerate = new JButton("Generate Key");
 	private JButton btnSave = new JButton("Save key to file");
-	private JScrollPane scrImage = new JScrollPane(lblImg);
+	private JScrollPane scrImage = new JScrollPane(viewKey);
+	private JobPanel pnlJob = new JobPanel(tfWidth, tfHeight, btnGenerate, btnSave);
 
-	private BufferedImage imgKey = null;
+	private BitShare shareKey = null;
 	JFileChooser fileChooser = new JFileChooser();
 	
 	public KeyGenFrame(JFrame parent) {
@@ -54,6 +50,7 @@ public class KeyGenFrame extends JFrame implements ActionListener {
 		pnlRes.setAlignmentX(LEFT_ALIGNMENT);
 		scrImage.setAlignmentX(LEFT_ALIGNMENT);
 		btnSave.setAlignmentX(LEFT_ALIGNMENT);
+		pnlJob.setAlignmentX(LEFT_ALIGNMENT);
 		
 		// action listener
 		btnGenerate.addActionListener(this);
@@ -97,6 +94,7 @@ public class KeyGenFrame extends JFrame implements ActionListener {
 		pnlAll.add(Box.createVerticalStrut(10));
 		pnlAll.add(scrImage);
 		pnlAll.add(btnSave);
+		pnlAll.add(pnlJob);
 		
 		setFocusTraversalPolicy(new MyFocusTraversalPolicy());
 		
@@ -112,22 +110,25 @@ public class KeyGenFrame extends JFrame implements ActionListener {
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		if (e.getActionCommand().equals(btnGenerate.getText())) {
-			imgKey = Crypting.generateKey(Integer.parseInt(tfWidth.getText()), Integer.parseInt(tfHeight.getText()));
-			lblImg.setIcon(new ImageIcon(imgKey));
-			btnSave.setEnabled(true);
+			int width = Integer.parseInt(tfWidth.getText());
+			int height = Integer.parseInt(tfHeight.getText());
+			pnlJob.run(new CryptingJob<BitShare>(this, job -> {
+				job.step("Generating key");
+				return KeyPool.getDefault().takeOrGenerate(width, height, job);
+			}, result -> {
+				shareKey = result;
+				viewKey.setShare(shareKey);
+				btnSave.setEnabled(true);
+			}));
 		} else if (e.getActionCommand().equals(btnSave.getText())) {
-			if (imgKey == null) return;
+			if (shareKey == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
 		    	File f = fileChooser.getSelectedFile();
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgKey, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareKey, f));
 		    }
 		} else {
 			// tfWidth or tfHeight
@@ -1,20 +1,16 @@
 import java.awt.Component;
 import java.awt.Container;
-import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.FocusTraversalPolicy;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
 
-import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -34,19 +30,21 @@ public class KeyGenNEncryptFrame extends JFrame implements ActionListener {
 	private JPanel pnlScrollEnc = new JPanel();
 	
 	private JLabel lblDescr = new JLabel("<html>Add a valid source image (png, jpg or gif, will be converted to b/w) below to generate a key for it and encrypt it.</html>");
-	private JLabel lblKey = new JLabel(new ImageIcon(), JLabel.CENTER);
-	private JLabel lblEnc = new JLabel(new ImageIcon(), JLabel.CENTER);
+	private ShareView viewKey = new ShareView();
+	private ShareView viewEnc = new ShareView();
 	private JTextField tfImage = new JTextField();
+	private JCheckBox cbDither = new JCheckBox("Greyscale photo (dither instead of converting to b/w)");
 	private JButton btnSelectImg = new JButton("Select image");
 	private JButton btnEncrypt = new JButton("Generate Key and Encrypt");
 	private JButton btnSaveKey = new JButton("Save key to file");
 	private JButton btnSaveEnc = new JButton("Save crypt to file");
-	private JScrollPane scrKey = new JScrollPane(lblKey);
-	private JScrollPane scrEnc = new JScrollPane(lblEnc);
+	private JScrollPane scrKey = new JScrollPane(viewKey);
+	private JScrollPane scrEnc = new JScrollPane(viewEnc);
+	private JobPanel pnlJob = new JobPanel(btnSelectImg, cbDither, btnEncrypt, btnSaveKey, btnSaveEnc);
 	
 	private JFileChooser fileChooser = new JFileChooser();
-	private BufferedImage imgKey = null;
-	private BufferedImage imgEnc = null;
+	private BitShare shareKey = null;
+	private BitShare shareEnc = null;
 	File fSrcFile = null;
 	
 	public KeyGenNEncryptFrame(JFrame parent) {
@@ -56,7 +54,9 @@ public class KeyGenNEncryptFrame extends JFrame implements ActionListener {
 		// orientation
 		lblDescr.setAlignmentX(LEFT_ALIGNMENT);
 		pnlFile.setAlignmentX(LEFT_ALIGNMENT);
+		cbDither.setAlignmentX(LEFT_ALIGNMENT);
 		pnlScrolls.setAlignmentX(LEFT_ALIGNMENT);
+		pnlJob.setAlignmentX(LEFT_ALIGNMENT);
 		
 		// action listener
 		btnSelectImg.addActionListener(this);
@@ -106,9 +106,11 @@ public class KeyGenNEncryptFrame extends JFrame implements ActionListener {
 		pnlAll.setLayout(new BoxLayout(pnlAll, BoxLayout.Y_AXIS));
 		pnlAll.add(lblDescr);
 		pnlAll.add(pnlFile);
+		pnlAll.add(cbDither);
 		pnlAll.add(btnEncrypt);
 		pnlAll.add(Box.createVerticalStrut(10));
 		pnlAll.add(pnlScrolls);
+		pnlAll.add(pnlJob);
 		
 		setFocusTraversalPolicy(new MyFocusTraversalPolicy());
 		
@@ -128,64 +130,49 @@ public class KeyGenNEncryptFrame extends JFrame implements ActionListener {
 				JOptionPane.showMessageDialog(this, "File not found", "ERROR", JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-			BufferedImage imgSrc = Crypting.loadAndCheckSource(fSrcFile, 0, 0, false);
-			if (imgSrc == null) {
-				this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				JOptionPane.showMessageDialog(this, fSrcFile.getName() + " is not fit for encryption", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-			
-			imgKey = Crypting.generateKey(imgSrc.getWidth(), imgSrc.getHeight());
-			imgEnc = Crypting.encryptImage(imgKey, imgSrc);
-			
-			if (imgKey == null || imgEnc == null) {
-				JOptionPane.showMessageDialog(this, "Error while encrypting (should never happen :( )", "ERROR", JOptionPane.ERROR_MESSAGE);
-				this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				return;
-			}
-			
-			lblKey.setIcon(new ImageIcon(imgKey));
-			lblEnc.setIcon(new ImageIcon(imgEnc));
-			
-			btnSaveKey.setEnabled(true);
-			btnSaveEnc.setEnabled(true);
-			this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+			File fSrc = fSrcFile;
+			Halftone.Method dither = cbDither.isSelected() ? Halftone.Method.DIFFUSION : Halftone.Method.THRESHOLD;
+			pnlJob.run(new CryptingJob<BitShare[]>(this, job -> {
+				job.step("Loading image");
+				BitShare src = Crypting.loadAndCheckSourceShare(fSrc, 0, 0, false, dither);
+				if (src == null) throw new CryptingJob.Failure(fSrc.getName() + " is not fit for encryption");
+				
+				job.step("Generating key");
+				BitShare key = KeyPool.getDefault().takeOrGenerate(src.getWidth(), src.getHeight(), job);
+				job.step("Encrypting");
+				BitShare enc = Crypting.encryptImage(key, src, job);
+				if (key == null || enc == null) throw new CryptingJob.Failure("Error while encrypting (should never happen :( )");
+				return new BitShare[]{key, enc};
+			}, shares -> {
+				shareKey = shares[0];
+				shareEnc = shares[1];
+				viewKey.setShare(shareKey);
+				viewEnc.setShare(shareEnc);
+				
+				btnSaveKey.setEnabled(true);
+				btnSaveEnc.setEnabled(true);
+			}));
 		} else if (e.getActionCommand().equals(btnSaveKey.getText())) {
-			if (imgKey == null) return;
+			if (shareKey == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    fileChooser.setDialogTitle("Save key as..");
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-		    	this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 		    	File f = fileChooser.getSelectedFile();
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgKey, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				} finally {
-					this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareKey, f));
 		    }
 		} else if (e.getActionCommand().equals(btnSaveEnc.getText())) {
-			if (imgEnc == null) return;
+			if (shareEnc == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    fileChooser.setDialogTitle("Save encrypted image as..");
-		    this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
 		    	File f = fileChooser.getSelectedFile();
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgEnc, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				} finally {
-					this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareEnc, f));
 		    }
 		} else if (e.getActionCommand().equals(btnSelectImg.getText())) {
 			fileChooser.setDialogTitle("Open image..");
@@ -200,7 +187,8 @@ public class KeyGenNEncryptFrame extends JFrame implements ActionListener {
 
 	class MyFocusTraversalPolicy extends FocusTraversalPolicy {
 	    public Component getComponentAfter(Container focusCycleRoot, Component aComponent) {
-	        if(aComponent.equals(btnSelectImg)) return btnEncrypt;
+	        if(aComponent.equals(btnSelectImg)) return cbDither;
+	        else if(aComponent.equals(cbDither)) return btnEncrypt;
 	        else if(aComponent.equals(btnEncrypt)) {
 	        	if (btnSaveKey.isEnabled()) return btnSaveKey;
 	        	if (btnSaveEnc.isEnabled()) return btnSaveEnc;
@@ -216,7 +204,8 @@ public class KeyGenNEncryptFrame extends JFrame implements ActionListener {
 	        	if (btnSaveKey.isEnabled()) return btnSaveKey;
 	        	return btnEncrypt;
 	        }
-	        else if(aComponent.equals(btnEncrypt)) return btnSelectImg;
+	        else if(aComponent.equals(btnEncrypt)) return cbDither;
+	        else if(aComponent.equals(cbDither)) return btnSelectImg;
 	        else if(aComponent.equals(btnSaveKey)) return btnEncrypt;
 	        else if(aComponent.equals(btnSaveEnc) && btnSaveKey.isEnabled()) return btnSaveKey;
 	        return btnEncrypt;
@@ -0,0 +1,210 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Generates keys for common sizes in the background, so that they can be handed out instantly when needed.
+ * Every key is handed out only once. Keys are generated on a single low priority daemon thread, at most
+ * keysPerSize per size and never more than maxBytes in total. Sizes are those of the largest encryptable
+ * image, like generateKey(int, int) takes them.
+ */
+public class KeyPool {
+	/** system property with the sizes of the default pool, e.g. "200x200,1024x768" */
+	public static final String SIZES_PROPERTY = "visualcryptography.keypool.sizes";
+	private static final String DEFAULT_SIZES = "200x200";
+	private static final int DEFAULT_KEYS_PER_SIZE = 2;
+	private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	private static final long RETRY_MILLIS = 10_000;
+	private static final Logger LOG = Logger.getLogger(KeyPool.class.getName());
+
+	private static KeyPool defaultPool = null;
+
+	private final Map<Dimension, ArrayDeque<BitShare>> keys = new LinkedHashMap<>();
+	private final int keysPerSize;
+	private final long maxBytes;
+	private long bytes = 0; // of the pooled keys and the one being generated
+	private boolean closed = false;
+	private Thread refiller = null;
+
+	/**
+	 * Creates a pool, call start() to begin generating keys
+	 * @param sizes The sizes to keep keys for
+	 * @param keysPerSize The amount of keys to keep per size
+	 * @param maxBytes The most memory the pooled keys may take
+	 */
+	public KeyPool(Collection<Dimension> sizes, int keysPerSize, long maxBytes) {
+		for (Dimension size : sizes) keys.put(new Dimension(size), new ArrayDeque<>());
+		this.keysPerSize = keysPerSize;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return The pool shared by the frames, with the sizes of the SIZES_PROPERTY system property.
+	 * It is started on the first call.
+	 */
+	public static synchronized KeyPool getDefault() {
+		if (defaultPool == null) {
+			List<Dimension> sizes = new ArrayList<>();
+			for (String size : System.getProperty(SIZES_PROPERTY, DEFAULT_SIZES).split(",")) {
+				String[] parts = size.trim().split("x");
+				if (parts.length != 2) continue;
+				try {
+					sizes.add(new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+				} catch (NumberFormatException e) {
+					// ignore invalid sizes
+				}
+			}
+			defaultPool = new KeyPool(sizes, DEFAULT_KEYS_PER_SIZE, DEFAULT_MAX_BYTES);
+			defaultPool.start();
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * Starts the background thread generating keys
+	 */
+	public synchronized void start() {
+		if (refiller != null || closed) return;
+		refiller = new Thread(this::refill, "KeyPool refiller");
+		refiller.setDaemon(true);
+		refiller.setPriority(Thread.MIN_PRIORITY);
+		refiller.start();
+	}
+
+	/**
+	 * Stops generating keys and drops all pooled ones
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (ArrayDeque<BitShare> queue : keys.values()) queue.clear();
+		bytes = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Takes a pooled key out of the pool
+	 * @param width The width of the largest encryptable Image (width of key is two times as wide)
+	 * @param height The height of the largest encryptable Image (height of key is two times as tall)
+	 * @return The key or null if there is none of that size at the moment
+	 */
+	public synchronized BitShare take(int width, int height) {
+		ArrayDeque<BitShare> queue = keys.get(new Dimension(width, height));
+		if (queue == null || queue.isEmpty()) return null;
+		BitShare key = queue.poll();
+		bytes -= bytesOf(width, height);
+		notifyAll(); // refill
+		return key;
+	}
+
+	/**
+	 * Takes a pooled key or generates one if there is none
+	 * @param width The width of the largest encryptable Image (width of key is two times as wide)
+	 * @param height The height of the largest encryptable Image (height of key is two times as tall)
+	 * @return The key
+	 */
+	public BitShare takeOrGenerate(int width, int height) {
+		return takeOrGenerate(width, height, Progress.NONE);
+	}
+
+	/**
+	 * Same as takeOrGenerate(int, int), reporting the progress if the key has to be generated
+	 * @param progress Receives the progress, see Crypting.generateKeyParallel(BitShare, Progress)
+	 */
+	public BitShare takeOrGenerate(int width, int height, Progress progress) {
+		BitShare key = take(width, height);
+		return key != null ? key : Crypting.generateKeyParallel(new BitShare(width, height), progress);
+	}
+
+	/**
+	 * Same as takeOrGenerate, as an image like Crypting.generateKey(int, int) returns it
+	 */
+	public BufferedImage takeOrGenerateImage(int width, int height) {
+		return takeOrGenerate(width, height).toImage();
+	}
+
+	/**
+	 * @return The amount of keys of that size in the pool right now
+	 */
+	public synchronized int available(int width, int height) {
+		ArrayDeque<BitShare> queue = keys.get(new Dimension(width, height));
+		return queue == null ? 0 : queue.size();
+	}
+
+	private void refill() {
+		while (true) {
+			Dimension size;
+			synchronized (this) {
+				while ((size = nextToGenerate()) == null) {
+					if (closed) return;
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (closed) return;
+				// reserve the memory before generating, so the budget holds while generating
+				bytes += bytesOf(size.width, size.height);
+			}
+
+			BitShare key;
+			try {
+				key = Crypting.generateKey(new BitShare(size.width, size.height));
+			} catch (RuntimeException | Error e) {
+				LOG.log(Level.WARNING, "Could not generate a pooled key of " + size.width + "x" + size.height, e);
+				synchronized (this) {
+					if (closed) return;
+					bytes -= bytesOf(size.width, size.height);
+					// back off, e.g. until memory is freed again
+					long until = System.currentTimeMillis() + RETRY_MILLIS;
+					for (long left; !closed && (left = until - System.currentTimeMillis()) > 0; ) {
+						try {
+							wait(left);
+						} catch (InterruptedException ex) {
+							return;
+						}
+					}
+				}
+				continue;
+			}
+
+			synchronized (this) {
+				if (closed) return;
+				keys.get(size).add(key);
+			}
+		}
+	}
+
+	/**
+	 * @return The size with the fewest pooled keys that still needs one and fits into the budget, or null
+	 */
+	private Dimension nextToGenerate() {
+		Dimension next = null;
+		int fewest = keysPerSize;
+		for (Map.Entry<Dimension, ArrayDeque<BitShare>> entry : keys.entrySet()) {
+			Dimension size = entry.getKey();
+			int count = entry.getValue().size();
+			if (count < fewest && bytes + bytesOf(size.width, size.height) <= maxBytes) {
+				next = size;
+				fewest = count;
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * @return The memory a key for an image of that size takes
+	 */
+	private static long bytesOf(int width, int height) {
+		// the key is twice as wide and tall, one bit per pixel in longs
+		return (long)height * 2 * ((width * 2L + 63) / 64) * 8;
+	}
+}
@@ -0,0 +1,443 @@
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+
+/**
+ * A share in a raw file of its own (extension .vcs), read and written through memory mapped buffers so that
+ * shares far larger than the heap can be processed without ever being decoded. The file is a HEADER_SIZE byte
+ * header followed by the rows exactly like BitShare keeps them: getWordsPerRow() longs per row, little endian.
+ * The header holds (little endian as well):
+ * <pre>
+ *  0  magic "VCSHARE" and a 0 byte
+ *  8  int   format version (1)
+ * 12  int   width
+ * 16  int   height
+ * 20  int   words per row
+ * 24  int   scheme, SCHEME_BW, SCHEME_2X2 or SCHEME_THRESHOLD
+ * 28  int   first parameter of the scheme (k of a threshold scheme, otherwise 0)
+ * 32  int   second parameter of the scheme (n of a threshold scheme, otherwise 0)
+ * 36  int   reserved, 0
+ * 40  long  CRC32C of all rows, written on close()
+ * </pre>
+ * The rows are mapped in segments of up to MAX_SEGMENT bytes that hold whole rows only.
+ * Instances aren't thread safe as such, but different rows may be read and written concurrently.
+ */
+public class MappedShare implements Closeable {
+	/** a b/w image: source or decrypted image */
+	public static final int SCHEME_BW = 0;
+	/** a key or encrypted image of the 2x2 scheme of Crypting */
+	public static final int SCHEME_2X2 = 1;
+	/** a share of a ThresholdScheme, with k and n as parameters */
+	public static final int SCHEME_THRESHOLD = 2;
+	/** extension of the files */
+	public static final String EXTENSION = ".vcs";
+	/** bytes in front of the first row */
+	public static final int HEADER_SIZE = 64;
+
+	private static final byte[] MAGIC = {'V', 'C', 'S', 'H', 'A', 'R', 'E', 0};
+	private static final int VERSION = 1;
+	private static final int CHECKSUM_OFFSET = 40;
+	private static final long MAX_SEGMENT = 1L << 30;
+	// rows per task of the parallel operations
+	private static final int BAND_ROWS = 64;
+	private static final ShareKernels KERNELS = ShareKernels.load();
+
+	private final FileChannel channel;
+	private final boolean writable;
+	private final int width;
+	private final int height;
+	private final int wordsPerRow;
+	private final int scheme;
+	private final int k;
+	private final int n;
+	private final long checksum;
+	private final int segmentRows;
+	private final ByteBuffer[] segments;
+	private final LongBuffer[] segmentWords;
+
+	private MappedShare(FileChannel channel, boolean writable, ByteBuffer header) throws IOException {
+		this.channel = channel;
+		this.writable = writable;
+		this.width = header.getInt(12);
+		this.height = header.getInt(16);
+		this.wordsPerRow = header.getInt(20);
+		this.scheme = header.getInt(24);
+		this.k = header.getInt(28);
+		this.n = header.getInt(32);
+		this.checksum = header.getLong(CHECKSUM_OFFSET);
+
+		long rowBytes = wordsPerRow * 8L;
+		segmentRows = rowBytes == 0 ? Math.max(height, 1) : (int)Math.max(1, Math.min(height, MAX_SEGMENT / rowBytes));
+		int count = height == 0 ? 0 : (height + segmentRows - 1) / segmentRows;
+		segments = new ByteBuffer[count];
+		segmentWords = new LongBuffer[count];
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		for (int i = 0; i < count; ++i) {
+			int rows = Math.min(segmentRows, height - i * segmentRows);
+			MappedByteBuffer segment = channel.map(mode, HEADER_SIZE + i * segmentRows * rowBytes, rows * rowBytes);
+			segments[i] = segment;
+			segmentWords[i] = segment.duplicate().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		}
+	}
+
+	/**
+	 * Creates a new, fully transparent share file, replacing any existing one. The checksum is written on close().
+	 * @param f The file
+	 * @param width The width in pixels
+	 * @param height The height in pixels
+	 * @param scheme SCHEME_BW or SCHEME_2X2
+	 * @return The share, open for reading and writing
+	 * @throws IOException If the file couldn't be created
+	 */
+	public static MappedShare create(File f, int width, int height, int scheme) throws IOException {
+		return create(f, width, height, scheme, 0, 0);
+	}
+
+	/**
+	 * Creates a new share file of a ThresholdScheme like create(File, int, int, int)
+	 */
+	public static MappedShare create(File f, int width, int height, ThresholdScheme thresholdScheme) throws IOException {
+		return create(f, width, height, SCHEME_THRESHOLD, thresholdScheme.getK(), thresholdScheme.getN());
+	}
+
+	private static MappedShare create(File f, int width, int height, int scheme, int k, int n) throws IOException {
+		if (width < 0 || height < 0) throw new IllegalArgumentException("Negative size: " + width + "x" + height);
+		int wordsPerRow = (width + 63) >>> 6;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(wordsPerRow).putInt(scheme).putInt(k).putInt(n);
+		header.clear();
+
+		FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			writeFully(channel, header, 0);
+			// grows the (sparse) file to its full size, mapping it then needs no further writes
+			long size = HEADER_SIZE + (long)height * wordsPerRow * 8;
+			if (size > HEADER_SIZE) writeFully(channel, ByteBuffer.allocate(1), size - 1);
+			return new MappedShare(channel, true, header);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a share file for reading. The checksum is only compared by verify(), since that reads the whole file.
+	 * @param f The file
+	 * @return The share
+	 * @throws IOException If the file couldn't be read or isn't a (complete) share file
+	 */
+	public static MappedShare open(File f) throws IOException {
+		return open(f, false);
+	}
+
+	/**
+	 * Opens a share file like open(File)
+	 * @param writable Whether the rows may be changed, the checksum is updated on close() then
+	 */
+	public static MappedShare open(File f, boolean writable) throws IOException {
+		FileChannel channel = writable ? FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(f.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+				// read on until the header is complete or the file ends
+			}
+			if (header.hasRemaining()) throw new IOException("Not a share file: " + f);
+			for (int i = 0; i < MAGIC.length; ++i) {
+				if (header.get(i) != MAGIC[i]) throw new IOException("Not a share file: " + f);
+			}
+			if (header.getInt(8) != VERSION) throw new IOException("Unknown share file version " + header.getInt(8) + ": " + f);
+			int width = header.getInt(12);
+			int height = header.getInt(16);
+			if (width < 0 || height < 0 || header.getInt(20) != (width + 63) >>> 6) throw new IOException("Corrupt share file header: " + f);
+			if (channel.size() != HEADER_SIZE + (long)height * header.getInt(20) * 8) throw new IOException("Share file has the wrong size: " + f);
+			return new MappedShare(channel, writable, header);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) position += channel.write(buffer, position);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return The amount of longs every row consists of, like BitShare.getWordsPerRow()
+	 */
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	/**
+	 * @return SCHEME_BW, SCHEME_2X2 or SCHEME_THRESHOLD
+	 */
+	public int getScheme() {
+		return scheme;
+	}
+
+	/**
+	 * @return The k of a SCHEME_THRESHOLD share, 0 otherwise
+	 */
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * @return The n of a SCHEME_THRESHOLD share, 0 otherwise
+	 */
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * Copies a row out of the mapped file
+	 * @param y The row
+	 * @param row Receives the bits like BitShare.getRow(), at least getWordsPerRow() long
+	 */
+	public void readRow(int y, long[] row) {
+		segmentWords[y / segmentRows].get((y % segmentRows) * wordsPerRow, row, 0, wordsPerRow);
+	}
+
+	/**
+	 * Copies a row into the mapped file
+	 * @param y The row
+	 * @param row The bits like BitShare.getRow(), bits past the width have to be 0
+	 * @throws java.nio.ReadOnlyBufferException If the share was opened read only
+	 */
+	public void writeRow(int y, long[] row) {
+		segmentWords[y / segmentRows].put((y % segmentRows) * wordsPerRow, row, 0, wordsPerRow);
+	}
+
+	/**
+	 * @return The CRC32C of all rows as they are now
+	 */
+	private long computeChecksum() {
+		CRC32C crc = new CRC32C();
+		for (ByteBuffer segment : segments) crc.update(segment.duplicate().clear());
+		return crc.getValue();
+	}
+
+	/**
+	 * Compares the rows with the checksum in the header, reading the whole file
+	 * @return true if they match
+	 */
+	public boolean verify() {
+		return computeChecksum() == checksum;
+	}
+
+	/**
+	 * Writes the checksum of a writable share, then closes the file. The mapped memory itself is only released
+	 * once the share is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (writable) {
+				ByteBuffer crc = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, computeChecksum());
+				writeFully(channel, crc, CHECKSUM_OFFSET);
+				for (ByteBuffer segment : segments) ((MappedByteBuffer)segment).force();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the share into memory
+	 */
+	public BitShare toBitShare() {
+		BitShare share = new BitShare(width, height);
+		IntStream.range(0, height).parallel().forEach(y -> readRow(y, share.getRow(y)));
+		return share;
+	}
+
+	/**
+	 * Writes a share in memory to a share file
+	 * @param share The share
+	 * @param f The file
+	 * @param scheme SCHEME_BW or SCHEME_2X2
+	 * @throws IOException If the file couldn't be written
+	 */
+	public static void write(BitShare share, File f, int scheme) throws IOException {
+		try (MappedShare mapped = create(f, share.getWidth(), share.getHeight(), scheme)) {
+			IntStream.range(0, share.getHeight()).parallel().forEach(y -> mapped.writeRow(y, share.getRow(y)));
+		}
+	}
+
+	/**
+	 * Converts an image file (e.g. a key png) to a share file band by band, so that the image never has to be in
+	 * memory at once. Pixels become black like BitShare.fromImage decides.
+	 * @param imageFile The image
+	 * @param f The share file to write
+	 * @param scheme SCHEME_BW or SCHEME_2X2 (which needs an even width and height)
+	 * @param bandRows The amount of rows to read at once
+	 * @return true if the file was written, false if the image couldn't be read or has an odd size for SCHEME_2X2
+	 * @throws IOException If reading or writing failed
+	 */
+	public static boolean importImage(File imageFile, File f, int scheme, int bandRows) throws IOException {
+		try (StreamingEncryption.BandReader reader = StreamingEncryption.BandReader.open(imageFile)) {
+			if (reader == null) return false;
+			int width = reader.getWidth();
+			int height = reader.getHeight();
+			if (scheme == SCHEME_2X2 && (width % 2 != 0 || height % 2 != 0)) return false;
+			try (MappedShare mapped = create(f, width, height, scheme)) {
+				for (int fromRow = 0; fromRow < height; fromRow += bandRows) {
+					BufferedImage band = reader.read(fromRow, Math.min(bandRows, height - fromRow));
+					BitShare share = BitShare.fromImage(band);
+					for (int y = 0; y < share.getHeight(); ++y) mapped.writeRow(fromRow + y, share.getRow(y));
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Writes a share file as 1-bit png band by band, so that the frames can open it
+	 * @param f The share file
+	 * @param pngFile The png to write
+	 * @param writer How the png is written
+	 * @param bandRows The amount of rows to hold in memory at once
+	 * @param progress Receives the rows written
+	 * @throws IOException If reading or writing failed or f isn't a share file
+	 */
+	public static void exportImage(File f, File pngFile, SharePngWriter writer, int bandRows, Progress progress) throws IOException {
+		try (MappedShare mapped = open(f)) {
+			writer.write(mapped.toBandImage(bandRows), pngFile, progress);
+		}
+	}
+
+	/**
+	 * @return The share as image that reads its bands from the mapped file when they're asked for
+	 */
+	public ShareBandImage toBandImage(int bandRows) {
+		return new ShareBandImage(width, height, bandRows, (fromRow, rows) -> {
+			BitShare band = new BitShare(width, rows);
+			for (int y = 0; y < rows; ++y) readRow(fromRow + y, band.getRow(y));
+			return band;
+		});
+	}
+
+	/**
+	 * Encrypts a b/w share file with a key file into a new share file, see Crypting.encryptImage(BitShare, BitShare).
+	 * The rows go straight from the mapped files through the kernels into the mapped result, on all cores.
+	 * @param keyFile The key
+	 * @param srcFile The b/w source, half as wide and tall as the key
+	 * @param encFile The encrypted share file to write
+	 * @return true if encFile was written, false if the sizes don't fit
+	 * @throws IOException If reading or writing failed or a file isn't a share file
+	 */
+	public static boolean encrypt(File keyFile, File srcFile, File encFile) throws IOException {
+		try (MappedShare key = open(keyFile); MappedShare src = open(srcFile)) {
+			if (key.width % 2 != 0 || key.height % 2 != 0 || src.width != key.width / 2 || src.height != key.height / 2) return false;
+			try (MappedShare enc = create(encFile, key.width, key.height, SCHEME_2X2)) {
+				forBands(enc.height, (fromY, toY) -> {
+					long[] keyRow = new long[key.wordsPerRow];
+					long[] srcRow = new long[src.wordsPerRow];
+					long[] encRow = new long[enc.wordsPerRow];
+					for (int y = fromY; y < toY; ++y) {
+						key.readRow(y, keyRow);
+						src.readRow(y / 2, srcRow);
+						KERNELS.encryptRow(keyRow, srcRow, encRow);
+						enc.writeRow(y, encRow);
+					}
+				});
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Overlays a key file and an encrypted share file, see Crypting.overlayImages(BitShare, BitShare)
+	 * @return true if overlayFile was written, false if the shares are of different size
+	 * @throws IOException If reading or writing failed or a file isn't a share file
+	 */
+	public static boolean overlay(File keyFile, File encFile, File overlayFile) throws IOException {
+		try (MappedShare key = open(keyFile); MappedShare enc = open(encFile)) {
+			if (key.width != enc.width || key.height != enc.height) return false;
+			try (MappedShare overlay = create(overlayFile, key.width, key.height, SCHEME_2X2)) {
+				forBands(overlay.height, (fromY, toY) -> {
+					long[] keyRow = new long[key.wordsPerRow];
+					long[] encRow = new long[enc.wordsPerRow];
+					long[] overlayRow = new long[overlay.wordsPerRow];
+					for (int y = fromY; y < toY; ++y) {
+						key.readRow(y, keyRow);
+						enc.readRow(y, encRow);
+						KERNELS.overlayRow(keyRow, encRow, overlayRow);
+						overlay.writeRow(y, overlayRow);
+					}
+				});
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Decrypts an encrypted share file with its key file, see Crypting.decryptImage(BitShare, BitShare)
+	 * @param keyFile The key
+	 * @param encFile The encrypted share
+	 * @param cleanFile The b/w share file to write, half as wide and tall
+	 * @return true if cleanFile was written, false if the shares are of different or odd size
+	 * @throws IOException If reading or writing failed or a file isn't a share file
+	 */
+	public static boolean decrypt(File keyFile, File encFile, File cleanFile) throws IOException {
+		try (MappedShare key = open(keyFile); MappedShare enc = open(encFile)) {
+			if (key.width != enc.width || key.height != enc.height || key.width % 2 != 0 || key.height % 2 != 0) return false;
+			try (MappedShare clean = create(cleanFile, key.width / 2, key.height / 2, SCHEME_BW)) {
+				forBands(clean.height, (fromY, toY) -> {
+					long[] keyTop = new long[key.wordsPerRow];
+					long[] keyBottom = new long[key.wordsPerRow];
+					long[] encTop = new long[enc.wordsPerRow];
+					long[] encBottom = new long[enc.wordsPerRow];
+					long[] cleanRow = new long[clean.wordsPerRow];
+					for (int y = fromY; y < toY; ++y) {
+						key.readRow(y * 2, keyTop);
+						key.readRow(y * 2 + 1, keyBottom);
+						enc.readRow(y * 2, encTop);
+						enc.readRow(y * 2 + 1, encBottom);
+						// the kernels OR into the clean row
+						Arrays.fill(cleanRow, 0);
+						KERNELS.decryptRow(keyTop, keyBottom, encTop, encBottom, cleanRow);
+						clean.writeRow(y, cleanRow);
+					}
+				});
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Processes the rows of a band, fromY inclusive to toY exclusive
+	 */
+	private interface BandTask {
+		void run(int fromY, int toY);
+	}
+
+	/**
+	 * Runs a task for bands of BAND_ROWS rows on all cores, every band with row buffers of its own
+	 */
+	private static void forBands(int height, BandTask task) {
+		int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+		IntStream.range(0, bands).parallel().forEach(band -> task.run(band * BAND_ROWS, Math.min((band + 1) * BAND_ROWS, height)));
+	}
+}
@@ -0,0 +1,385 @@
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageTypeSpecifier;
+
+
+/**
+ * Decodes a png one row after the other in a single pass, for StreamingEncryption.BandReader: the png reader of
+ * ImageIO inflates the image from its start again for every region read, which makes reading band by band quadratic
+ * in the height. The bands have the same colour models ImageIO gives the whole png, so they are converted to b/w
+ * alike. Only non-interlaced pngs are read this way.
+ */
+class PngRowReader implements Closeable {
+	private static final byte[] SIGNATURE = {(byte)137, 80, 78, 71, 13, 10, 26, 10};
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private int width;
+	private int height;
+	private int bitDepth;
+	private int colorType;
+	private int interlace;
+	private byte[] palette = null;
+	private byte[] paletteAlpha = null;
+	// the samples of the transparent colour of grey and rgb images
+	private int[] transparent = null;
+
+	private DataInputStream data = null;
+	private DataInputStream rows = null;
+	private Inflater inflater = null;
+	private int nextRow = 0;
+	private byte[] row;
+	private byte[] prior;
+
+	private PngRowReader(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return The reader or null if the file is no png or one that can't be read this way (interlaced)
+	 * @throws IOException If the file couldn't be read
+	 */
+	static PngRowReader open(File f) throws IOException {
+		PngRowReader reader = new PngRowReader(f);
+		boolean opened = false;
+		try {
+			opened = reader.start();
+		} catch (EOFException e) {
+			// too short for a png
+		} finally {
+			if (!opened) reader.close();
+		}
+		return opened ? reader : null;
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return The rows fromRow to fromRow + rows (exclusive). Reading the bands top to bottom decodes the png once,
+	 * going back to an earlier row starts decoding from the top again.
+	 */
+	BufferedImage read(int fromRow, int rows) throws IOException {
+		if (fromRow < 0 || rows < 1 || fromRow + rows > height) {
+			throw new IllegalArgumentException("Rows " + fromRow + " to " + (fromRow + rows) + " aren't in the image");
+		}
+		if (fromRow < nextRow) {
+			close();
+			if (!start()) throw new IOException(file + " changed while it was read");
+		}
+		while (nextRow < fromRow) nextRow();
+
+		BufferedImage band = imageType().createBufferedImage(width, rows);
+		WritableRaster raster = band.getRaster();
+		if (bitDepth < 8 && raster.getSampleModel() instanceof MultiPixelPackedSampleModel) {
+			// packed the same way as in the png, leftmost pixel in the highest bits
+			byte[] bytes = ((DataBufferByte)raster.getDataBuffer()).getData();
+			int stride = ((MultiPixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+			for (int y = 0; y < rows; ++y) {
+				nextRow();
+				System.arraycopy(row, 0, bytes, y * stride, row.length);
+			}
+		} else {
+			int channels = channels();
+			int bands = raster.getNumBands();
+			int[] samples = new int[width * bands];
+			int maxSample = (1 << Math.max(bitDepth, 8)) - 1;
+			for (int y = 0; y < rows; ++y) {
+				nextRow();
+				for (int x = 0; x < width; ++x) {
+					boolean opaque = transparent == null;
+					for (int c = 0; c < channels; ++c) {
+						// packed greys are scaled to 8 bits, and compared to tRNS after that like ImageIO does
+						int sample = bitDepth < 8 ? sample(x * channels + c) * 255 / ((1 << bitDepth) - 1) : sample(x * channels + c);
+						if (!opaque && sample != transparent[c]) opaque = true;
+						samples[x * bands + c] = sample;
+					}
+					// the alpha added for tRNS
+					if (bands > channels) samples[x * bands + channels] = opaque ? maxSample : 0;
+				}
+				raster.setPixels(0, y, width, 1, samples);
+			}
+		}
+		return band;
+	}
+
+	/**
+	 * @return The sample of the current row at the given index (pixel * channels + channel)
+	 */
+	private int sample(int index) {
+		switch (bitDepth) {
+		case 16:
+			return (row[index * 2] & 0xFF) << 8 | row[index * 2 + 1] & 0xFF;
+		case 8:
+			return row[index] & 0xFF;
+		default:
+			int bit = index * bitDepth;
+			return (row[bit >>> 3] & 0xFF) >>> (8 - bitDepth - (bit & 7)) & (1 << bitDepth) - 1;
+		}
+	}
+
+	/**
+	 * @return The type of the bands, like PNGImageReader chooses it (with the alpha tRNS adds)
+	 */
+	private ImageTypeSpecifier imageType() {
+		int dataType = bitDepth == 16 ? DataBuffer.TYPE_USHORT : DataBuffer.TYPE_BYTE;
+		ColorSpace rgb = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+		switch (colorType) {
+		case 0:
+			if (transparent == null) return ImageTypeSpecifier.createGrayscale(bitDepth, dataType, false);
+			// packed greys with one of them transparent take 8 bits
+			return ImageTypeSpecifier.createGrayscale(Math.max(bitDepth, 8), dataType, true, false);
+		case 2:
+			if (transparent == null) return ImageTypeSpecifier.createInterleaved(rgb, new int[] {0, 1, 2}, dataType, false, false);
+			return ImageTypeSpecifier.createInterleaved(rgb, new int[] {0, 1, 2, 3}, dataType, true, false);
+		case 3:
+			// padded to all indices the bit depth allows, missing alpha values are opaque
+			int entries = 1 << bitDepth;
+			byte[] red = new byte[entries];
+			byte[] green = new byte[entries];
+			byte[] blue = new byte[entries];
+			byte[] alphas = null;
+			for (int i = 0; i < Math.min(entries, palette.length / 3); ++i) {
+				red[i] = palette[i * 3];
+				green[i] = palette[i * 3 + 1];
+				blue[i] = palette[i * 3 + 2];
+			}
+			if (paletteAlpha != null) {
+				alphas = new byte[entries];
+				Arrays.fill(alphas, (byte)255);
+				System.arraycopy(paletteAlpha, 0, alphas, 0, Math.min(entries, paletteAlpha.length));
+			}
+			return ImageTypeSpecifier.createIndexed(red, green, blue, alphas, bitDepth, DataBuffer.TYPE_BYTE);
+		case 4:
+			return ImageTypeSpecifier.createGrayscale(bitDepth, dataType, true, false);
+		default:
+			return ImageTypeSpecifier.createInterleaved(rgb, new int[] {0, 1, 2, 3}, dataType, true, false);
+		}
+	}
+
+	/**
+	 * @return The samples per pixel in the file
+	 */
+	private int channels() {
+		switch (colorType) {
+		case 2:
+			return 3;
+		case 4:
+			return 2;
+		case 6:
+			return 4;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Opens the file and reads the chunks up to the image data
+	 * @return false if it isn't a png this reader can read
+	 */
+	private boolean start() throws IOException {
+		data = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		byte[] signature = new byte[SIGNATURE.length];
+		data.readFully(signature);
+		if (!Arrays.equals(signature, SIGNATURE)) return false;
+
+		int length = data.readInt();
+		if (!chunkType().equals("IHDR") || length != 13) return false;
+		width = data.readInt();
+		height = data.readInt();
+		bitDepth = data.readUnsignedByte();
+		colorType = data.readUnsignedByte();
+		data.readUnsignedByte(); // compression, always deflate
+		data.readUnsignedByte(); // filter method, always adaptive
+		interlace = data.readUnsignedByte();
+		data.readInt(); // crc
+		if (!validHeader() || interlace != 0) return false;
+
+		for (length = data.readInt(); ; length = data.readInt()) {
+			String type = chunkType();
+			if (type.equals("IDAT")) break;
+			if (type.equals("IEND")) return false;
+			if (type.equals("PLTE")) {
+				palette = new byte[length];
+				data.readFully(palette);
+			} else if (type.equals("tRNS") && colorType == 3) {
+				paletteAlpha = new byte[length];
+				data.readFully(paletteAlpha);
+			} else if (type.equals("tRNS") && (colorType == 0 || colorType == 2) && length == channels() * 2) {
+				transparent = new int[channels()];
+				for (int c = 0; c < transparent.length; ++c) transparent[c] = data.readUnsignedShort();
+			} else {
+				skip(length);
+			}
+			data.readInt(); // crc
+		}
+		if (colorType == 3 && palette == null) return false;
+
+		int bytesPerRow = (int)((width * (long)channels() * bitDepth + 7) / 8);
+		row = new byte[bytesPerRow];
+		prior = new byte[bytesPerRow];
+		inflater = new Inflater();
+		rows = new DataInputStream(new InflaterInputStream(new IdatInputStream(data, length), inflater, BUFFER_SIZE));
+		nextRow = 0;
+		return true;
+	}
+
+	private boolean validHeader() {
+		if (width < 1 || height < 1) return false;
+		if ((width * (long)channels() * bitDepth + 7) / 8 > Integer.MAX_VALUE - 8) return false;
+		switch (colorType) {
+		case 0:
+			return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8 || bitDepth == 16;
+		case 3:
+			return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8;
+		case 2:
+		case 4:
+		case 6:
+			return bitDepth == 8 || bitDepth == 16;
+		default:
+			return false;
+		}
+	}
+
+	private String chunkType() throws IOException {
+		byte[] type = new byte[4];
+		data.readFully(type);
+		return new String(type, StandardCharsets.US_ASCII);
+	}
+
+	private void skip(long bytes) throws IOException {
+		while (bytes > 0) {
+			long skipped = data.skip(bytes);
+			if (skipped <= 0) throw new EOFException();
+			bytes -= skipped;
+		}
+	}
+
+	/**
+	 * Inflates and unfilters the next row into row
+	 */
+	private void nextRow() throws IOException {
+		byte[] swap = prior;
+		prior = row;
+		row = swap;
+		int filter = rows.readUnsignedByte();
+		rows.readFully(row);
+		int bpp = Math.max(1, channels() * bitDepth / 8);
+		switch (filter) {
+		case 0:
+			break;
+		case 1:
+			for (int i = bpp; i < row.length; ++i) row[i] += row[i - bpp];
+			break;
+		case 2:
+			for (int i = 0; i < row.length; ++i) row[i] += prior[i];
+			break;
+		case 3:
+			for (int i = 0; i < row.length; ++i) {
+				int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+				row[i] += (a + (prior[i] & 0xFF)) >>> 1;
+			}
+			break;
+		case 4:
+			for (int i = 0; i < row.length; ++i) {
+				int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+				int c = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+				row[i] += paeth(a, prior[i] & 0xFF, c);
+			}
+			break;
+		default:
+			throw new IOException("Unknown png filter " + filter + " in row " + nextRow + " of " + file);
+		}
+		++nextRow;
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) return a;
+		if (pb <= pc) return b;
+		return c;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (inflater != null) inflater.end();
+		inflater = null;
+		rows = null;
+		if (data != null) data.close();
+		data = null;
+	}
+
+	/**
+	 * The content of consecutive IDAT chunks as one stream
+	 */
+	private static class IdatInputStream extends InputStream {
+		private final DataInputStream data;
+		private long remaining;
+		private boolean done = false;
+
+		/**
+		 * @param data The png, right after the type of the first IDAT chunk
+		 * @param length The length of the first IDAT chunk
+		 */
+		IdatInputStream(DataInputStream data, long length) {
+			this.data = data;
+			this.remaining = length & 0xFFFFFFFFL;
+		}
+
+		/**
+		 * @return false at the end of the image data
+		 */
+		private boolean nextChunk() throws IOException {
+			while (!done && remaining == 0) {
+				data.readInt(); // crc
+				remaining = data.readInt() & 0xFFFFFFFFL;
+				byte[] type = new byte[4];
+				data.readFully(type);
+				done = !new String(type, StandardCharsets.US_ASCII).equals("IDAT");
+			}
+			return !done;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) return -1;
+			--remaining;
+			return data.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (!nextChunk()) return -1;
+			int read = data.read(b, off, (int)Math.min(len, remaining));
+			if (read < 0) throw new EOFException("png ends within its image data");
+			remaining -= read;
+			return read;
+		}
+	}
+}
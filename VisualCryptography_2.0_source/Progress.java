@@ -0,0 +1,33 @@
+import java.util.concurrent.CancellationException;
+
+
+/**
+ * Receives the progress of a long running operation, e.g. from the Crypting methods that take one. An operation
+ * calls begin once with the amount of rows it is going to process and then rowsDone as it goes, possibly from
+ * several threads at once.
+ */
+public interface Progress {
+	/** Ignores the progress, for callers that aren't interested in it */
+	Progress NONE = new Progress() {
+		@Override
+		public void begin(long rows) {
+		}
+
+		@Override
+		public void rowsDone(int rows) {
+		}
+	};
+
+	/**
+	 * Called when an operation starts
+	 * @param rows The amount of rows the operation will report as done
+	 */
+	void begin(long rows);
+
+	/**
+	 * Called whenever some rows are done
+	 * @param rows The amount of rows done since the last call
+	 * @throws CancellationException If the operation should stop. It is aborted then, without a result.
+	 */
+	void rowsDone(int rows);
+}
@@ -0,0 +1,58 @@
+/**
+ * ShareKernels in plain Java, 64 pixels per long
+ */
+public class ScalarKernels implements ShareKernels {
+	@Override
+	public void encryptRow(long[] key, long[] src, long[] enc) {
+		for (int w = 0; w < enc.length; ++w) {
+			// a black source pixel inverts its block of the key, a white one copies it
+			enc[w] = key[w] ^ doubleBits((int)(src[w >>> 1] >>> ((w & 1) * 32)));
+		}
+	}
+
+	@Override
+	public void overlayRow(long[] key, long[] enc, long[] overlay) {
+		for (int w = 0; w < overlay.length; ++w) overlay[w] = key[w] | enc[w];
+	}
+
+	@Override
+	public void decryptRow(long[] keyTop, long[] keyBottom, long[] encTop, long[] encBottom, long[] clean) {
+		for (int w = 0; w < keyTop.length; ++w) {
+			long both = (keyTop[w] | encTop[w]) & (keyBottom[w] | encBottom[w]);
+			clean[w >>> 1] |= fullBlocks(both) << ((w & 1) * 32);
+		}
+	}
+
+	@Override
+	public void decryptOverlayRow(long[] top, long[] bottom, long[] clean) {
+		for (int w = 0; w < top.length; ++w) {
+			clean[w >>> 1] |= fullBlocks(top[w] & bottom[w]) << ((w & 1) * 32);
+		}
+	}
+
+	/**
+	 * Doubles every bit of a 32 bit word, so one source pixel covers two pixels of a key row
+	 */
+	static long doubleBits(int bits) {
+		long x = bits & 0xFFFFFFFFL;
+		x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+		x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x << 2)) & 0x3333333333333333L;
+		x = (x | (x << 1)) & 0x5555555555555555L;
+		return x | (x << 1);
+	}
+
+	/**
+	 * Takes the AND of two rows of 64 pixels and returns a 32 bit word where every bit is set if
+	 * both pixels of its column pair are black (meaning the whole 2x2 block is black)
+	 */
+	static long fullBlocks(long both) {
+		long x = both & (both >>> 1) & 0x5555555555555555L;
+		x = (x | (x >>> 1)) & 0x3333333333333333L;
+		x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+		return (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+	}
+}
@@ -0,0 +1,226 @@
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+
+
+/**
+ * A black & transparent image whose rows are only computed when they're asked for, one band of rows at a time.
+ * Meant to be written with ImageIO (the png writer asks for one row after the other), so that only one band
+ * ever has to be in memory. Pixels are 1 bit, index 0 is transparent and index 1 black.
+ */
+public class ShareBandImage implements RenderedImage {
+	/**
+	 * Computes the rows of a band
+	 */
+	public interface BandProducer {
+		/**
+		 * @param fromRow The first row of the band
+		 * @param rows The amount of rows of the band
+		 * @return The band, as wide as the image and rows tall
+		 */
+		BitShare produce(int fromRow, int rows) throws IOException;
+	}
+
+	/** black & transparent palette of the shares */
+	public static final IndexColorModel SHARE_COLOR_MODEL = new IndexColorModel(1, 2,
+			new byte[] {(byte)255, 0}, new byte[] {(byte)255, 0}, new byte[] {(byte)255, 0}, new byte[] {0, (byte)255});
+
+	private final int width;
+	private final int height;
+	private final int bandRows;
+	private final BandProducer producer;
+	private final SampleModel sampleModel;
+
+	private BitShare band = null;
+	private int bandFromRow = -1;
+
+	/**
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param bandRows The amount of rows to produce at once
+	 * @param producer Computes the bands
+	 */
+	public ShareBandImage(int width, int height, int bandRows, BandProducer producer) {
+		this.width = width;
+		this.height = height;
+		this.bandRows = bandRows;
+		this.producer = producer;
+		this.sampleModel = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, width, height, 1);
+	}
+
+	/**
+	 * Wraps a share that is already in memory as a single band, e.g. to write it as a 1-bit png
+	 * @param share The share
+	 * @return The image
+	 */
+	public static ShareBandImage of(BitShare share) {
+		return new ShareBandImage(share.getWidth(), share.getHeight(), Math.max(share.getHeight(), 1), (fromRow, rows) -> share);
+	}
+
+	/**
+	 * Returns the band holding the given row, producing it if it's not the current one
+	 */
+	private BitShare bandOf(int row) throws IOException {
+		int fromRow = (row / bandRows) * bandRows;
+		if (fromRow != bandFromRow) {
+			band = null; // allow the old band to be collected while the new one is produced
+			band = producer.produce(fromRow, Math.min(bandRows, height - fromRow));
+			bandFromRow = fromRow;
+		}
+		return band;
+	}
+	
+	/**
+	 * Returns the bits of a row like BitShare.getRow, producing its band if needed. Only valid until a row of
+	 * another band is asked for.
+	 * @param row The row
+	 * @return The bits of the row
+	 * @throws IOException If the band couldn't be produced
+	 */
+	public long[] getRow(int row) throws IOException {
+		return bandOf(row).getRow(row - bandFromRow);
+	}
+
+	@Override
+	public Raster getData(Rectangle rect) {
+		WritableRaster raster = Raster.createPackedRaster(DataBuffer.TYPE_BYTE, rect.width, rect.height, 1, 1, new Point(rect.x, rect.y));
+		byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+		int bytesPerRow = (rect.width + 7) / 8;
+		for (int y = 0; y < rect.height; ++y) {
+			int row = rect.y + y;
+			long[] bits;
+			try {
+				bits = getRow(row);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (rect.x == 0) {
+				// the raster has the leftmost pixel in the highest bit of each byte, the share in the lowest bit of each long
+				int offset = y * bytesPerRow;
+				for (int i = 0; i < bytesPerRow; ++i) {
+					data[offset + i] = (byte)Integer.reverse((int)(bits[i >>> 3] >>> ((i & 7) * 8)) << 24);
+				}
+			} else {
+				for (int x = 0; x < rect.width; ++x) {
+					int col = rect.x + x;
+					raster.setSample(col, row, 0, (int)(bits[col >>> 6] >>> col) & 1);
+				}
+			}
+		}
+		return raster;
+	}
+
+	@Override
+	public Raster getData() {
+		return getData(new Rectangle(0, 0, width, height));
+	}
+
+	@Override
+	public Raster getTile(int tileX, int tileY) {
+		return getData();
+	}
+
+	@Override
+	public WritableRaster copyData(WritableRaster raster) {
+		if (raster == null) return (WritableRaster)getData();
+		raster.setRect(getData(raster.getBounds()));
+		return raster;
+	}
+
+	@Override
+	public ColorModel getColorModel() {
+		return SHARE_COLOR_MODEL;
+	}
+
+	@Override
+	public SampleModel getSampleModel() {
+		return sampleModel;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public Vector<RenderedImage> getSources() {
+		return null;
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		return Image.UndefinedProperty;
+	}
+
+	@Override
+	public String[] getPropertyNames() {
+		return null;
+	}
+
+	@Override
+	public int getMinX() {
+		return 0;
+	}
+
+	@Override
+	public int getMinY() {
+		return 0;
+	}
+
+	@Override
+	public int getNumXTiles() {
+		return 1;
+	}
+
+	@Override
+	public int getNumYTiles() {
+		return 1;
+	}
+
+	@Override
+	public int getMinTileX() {
+		return 0;
+	}
+
+	@Override
+	public int getMinTileY() {
+		return 0;
+	}
+
+	@Override
+	public int getTileWidth() {
+		return width;
+	}
+
+	@Override
+	public int getTileHeight() {
+		return height;
+	}
+
+	@Override
+	public int getTileGridXOffset() {
+		return 0;
+	}
+
+	@Override
+	public int getTileGridYOffset() {
+		return 0;
+	}
+}
@@ -0,0 +1,332 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * Keeps the most recently used shares decoded and checked, so that selecting the same key, encrypted image or source
+ * again doesn't read and check it again (see Crypting.loadAndCheckEncrShare), and the most recent decryptions.
+ * A file is found again by its path, modification time and length. Only if those changed, the SHA-256 of its content
+ * is compared, so a file that is replaced is loaded anew but one that is just touched isn't.
+ * Threads asking for the same share at once wait for the one loading it.
+ * The least recently used shares are dropped when they take more than maxBytes together.
+ * All callers get the very same share, which must not be changed.
+ */
+public class ShareCache implements ShareCacheMXBean {
+	/** system property with the most memory the default cache may take in MB, an eighth of the heap if not set */
+	public static final String MAX_MB_PROPERTY = "visualcryptography.cache.mb";
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	private static final Logger LOG = Logger.getLogger(ShareCache.class.getName());
+	private static ShareCache defaultCache = null;
+
+	/**
+	 * What a share was loaded from. The hash is read only when needed, and once.
+	 */
+	private static class Version {
+		final File file;
+		final String path;
+		final long modified;
+		final long length;
+		private byte[] hash = null;
+
+		Version(File file) throws IOException {
+			this.file = file;
+			path = file.getCanonicalPath();
+			modified = file.lastModified();
+			length = file.length();
+		}
+
+		/**
+		 * @return Whether the file looks unchanged, without reading it
+		 */
+		boolean sameFile(Version other) {
+			return path.equals(other.path) && modified == other.modified && length == other.length;
+		}
+
+		/**
+		 * Reads the whole file, which is still far less work than decoding and checking it
+		 */
+		byte[] hash() throws IOException {
+			if (hash == null) hash = hashOf(file);
+			return hash;
+		}
+	}
+
+	private interface Loader {
+		/**
+		 * @return The share or null if the file(s) aren't fit
+		 */
+		BitShare load() throws IOException;
+	}
+
+	private static class Entry {
+		// all hashed, replaced by the versions of a touched but unchanged file
+		Version[] versions;
+		// null if the file isn't fit
+		final CompletableFuture<BitShare> share = new CompletableFuture<>();
+		long bytes = 0; // 0 while loading
+
+		Entry(Version[] versions) {
+			this.versions = versions;
+		}
+
+		boolean sameFiles(Version[] others) {
+			for (int i = 0; i < versions.length; ++i) {
+				if (!versions[i].sameFile(others[i])) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @param others Hashed already
+		 */
+		boolean sameContent(Version[] others) throws IOException {
+			for (int i = 0; i < versions.length; ++i) {
+				if (!versions[i].path.equals(others[i].path) || !Arrays.equals(versions[i].hash(), others[i].hash())) return false;
+			}
+			return true;
+		}
+	}
+
+	private final long maxBytes;
+	// by what was loaded and how, least recently used first
+	private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes = 0; // of the loaded entries
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param maxBytes The most memory the cached shares may take, a share larger than that isn't cached
+	 */
+	public ShareCache(long maxBytes) {
+		if (maxBytes < 0) throw new IllegalArgumentException("maxBytes can't be negative: " + maxBytes);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return The cache shared by the frames and the batch operations, with the size of the MAX_MB_PROPERTY system
+	 * property. It is registered with JMX as "VisualCryptography:type=ShareCache".
+	 */
+	public static synchronized ShareCache getDefault() {
+		if (defaultCache == null) {
+			long maxBytes = Runtime.getRuntime().maxMemory() / 8;
+			String mb = System.getProperty(MAX_MB_PROPERTY);
+			if (mb != null) {
+				try {
+					maxBytes = Long.parseLong(mb.trim()) * 1024 * 1024;
+				} catch (NumberFormatException e) {
+					LOG.warning("Invalid " + MAX_MB_PROPERTY + ": " + mb);
+				}
+			}
+			defaultCache = new ShareCache(Math.max(maxBytes, 0));
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(defaultCache, new ObjectName("VisualCryptography:type=ShareCache"));
+			} catch (JMException | SecurityException e) {
+				LOG.warning("Could not register the share cache with JMX: " + e);
+			}
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Gets a key or encrypted image, loading and checking it like Crypting.loadAndCheckEncrShare if it isn't cached
+	 * @param encFile The key or encrypted image
+	 * @return The share, shared with all other callers so it must not be changed, or null if it isn't a key file
+	 * @throws IOException If the file can't be read
+	 */
+	public BitShare getEncrShare(File encFile) throws IOException {
+		return getEncrShare(new Version(encFile));
+	}
+
+	private BitShare getEncrShare(Version version) throws IOException {
+		return get(new Version[]{version}, () -> Crypting.loadAndCheckEncrShare(version.file), "encr");
+	}
+
+	/**
+	 * Gets an image to be encrypted, loading it like Crypting.loadAndCheckSourceShare if it isn't cached with the
+	 * same size and halftoning
+	 * @return The share, shared with all other callers so it must not be changed, or null if the image isn't fit
+	 * @throws IOException If the file can't be read
+	 */
+	public BitShare getSourceShare(File sourceFile, int width, int height, boolean resize, Halftone.Method dither) throws IOException {
+		return get(new Version[]{new Version(sourceFile)}, () -> Crypting.loadAndCheckSourceShare(sourceFile, width, height, resize, dither),
+				"source", width, height, resize, dither);
+	}
+
+	/**
+	 * Gets the decryption of an encrypted image, decrypting it with the (cached) shares if it isn't cached
+	 * @param keyFile The key
+	 * @param encFile The encrypted image
+	 * @return The decrypted share, shared with all other callers so it must not be changed, or null if a file isn't
+	 * a share or they aren't of the same size
+	 * @throws IOException If a file can't be read
+	 */
+	public BitShare getDecrypted(File keyFile, File encFile) throws IOException {
+		return getDecrypted(keyFile, encFile, Progress.NONE);
+	}
+
+	/**
+	 * Gets the decryption like getDecrypted(File, File), reporting the rows decrypted if this caller decrypts
+	 * (see Crypting.decryptImage(BitShare, BitShare, Progress))
+	 * @param progress Receives the progress, may cancel the decryption. Other callers waiting for it load it then.
+	 */
+	public BitShare getDecrypted(File keyFile, File encFile, Progress progress) throws IOException {
+		// the shares are looked up with the same versions, so no file is hashed twice
+		Version keyVersion = new Version(keyFile);
+		Version encVersion = new Version(encFile);
+		return get(new Version[]{keyVersion, encVersion}, () -> {
+			BitShare key = getEncrShare(keyVersion);
+			BitShare enc = getEncrShare(encVersion);
+			return key == null || enc == null ? null : Crypting.decryptImage(key, enc, progress);
+		}, "decrypted");
+	}
+
+	/**
+	 * @param how What is loaded from the files and how, part of what the share is found by
+	 */
+	private BitShare get(Version[] versions, Loader loader, Object... how) throws IOException {
+		Object[] key = new Object[versions.length + how.length];
+		for (int i = 0; i < versions.length; ++i) key[i] = versions[i].path;
+		System.arraycopy(how, 0, key, versions.length, how.length);
+		List<Object> id = Arrays.asList(key);
+
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(id);
+			if (entry != null && !entry.sameFiles(versions)) entry = null;
+		}
+		boolean load = false;
+		if (entry == null) {
+			// hashed outside the lock, as new entries need the hashes anyway
+			for (Version version : versions) version.hash();
+			synchronized (this) {
+				entry = entries.get(id);
+				if (entry != null && entry.sameContent(versions)) {
+					entry.versions = versions;
+				} else {
+					if (entry != null) bytes -= entry.bytes;
+					entry = new Entry(versions);
+					entries.put(id, entry);
+					load = true;
+				}
+			}
+		}
+
+		if (load) {
+			misses.increment();
+			BitShare share;
+			try {
+				share = loader.load();
+			} catch (IOException | RuntimeException | Error e) {
+				// removed first, so callers waiting for a cancelled load don't find it again
+				remove(id, entry);
+				entry.share.completeExceptionally(e);
+				throw e;
+			}
+			entry.share.complete(share);
+			added(id, entry, share);
+			return share;
+		}
+		hits.increment();
+		try {
+			return entry.share.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + versions[0].file + " to be loaded");
+		} catch (ExecutionException e) {
+			// the caller loading it was cancelled, not this one
+			if (e.getCause() instanceof CancellationException) return get(versions, loader, how);
+			throw new IOException("Could not load " + versions[0].file + ": " + e.getCause(), e.getCause());
+		}
+	}
+
+	/**
+	 * Counts a loaded share and drops the least recently used ones over maxBytes
+	 */
+	private synchronized void added(List<Object> id, Entry entry, BitShare share) {
+		if (entries.get(id) != entry) return; // cleared or replaced meanwhile
+		entry.bytes = bytesOf(share);
+		bytes += entry.bytes;
+		for (Iterator<Entry> it = entries.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+			Entry oldest = it.next();
+			// ones still loading aren't counted yet
+			if (!oldest.share.isDone()) continue;
+			bytes -= oldest.bytes;
+			it.remove();
+		}
+	}
+
+	private synchronized void remove(List<Object> id, Entry entry) {
+		entries.remove(id, entry);
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return The amount of shares cached right now (including those being loaded)
+	 */
+	@Override
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	private static long bytesOf(BitShare share) {
+		// one bit per pixel in longs, plus the header of every row
+		return share == null ? 0 : (long)share.getHeight() * (share.getWordsPerRow() * 8L + 16);
+	}
+
+	private static byte[] hashOf(File f) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required to be available", e);
+		}
+		try (InputStream in = Files.newInputStream(f.toPath())) {
+			byte[] buffer = new byte[HASH_BUFFER_SIZE];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) digest.update(buffer, 0, read);
+		}
+		return digest.digest();
+	}
+}
@@ -0,0 +1,22 @@
+/**
+ * The counters of a ShareCache as seen through JMX
+ */
+public interface ShareCacheMXBean {
+	long getHits();
+
+	long getMisses();
+
+	/**
+	 * @return The memory the cached shares take
+	 */
+	long getBytes();
+
+	long getMaxBytes();
+
+	int getSize();
+
+	/**
+	 * Drops all shares
+	 */
+	void clear();
+}
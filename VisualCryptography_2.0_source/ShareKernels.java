@@ -0,0 +1,55 @@
+/**
+ * The inner loops of encrypting, overlaying and decrypting shares, one row of words at a time (see BitShare).
+ * load() picks the SIMD implementation of vector/VectorKernels.java if it was compiled and the
+ * jdk.incubator.vector module is there, the plain ScalarKernels otherwise. To use it, compile and run with the module:
+ * <pre>
+ *   javac -d out *.java
+ *   javac --add-modules jdk.incubator.vector -cp out -d out vector/*.java
+ *   java --add-modules jdk.incubator.vector -cp out VisualCryptography
+ * </pre>
+ * -Dvisualcryptography.vector=false forces the scalar kernels.
+ */
+public interface ShareKernels {
+	/** system property to turn the vector kernels off */
+	String VECTOR_PROPERTY = "visualcryptography.vector";
+
+	/**
+	 * Encrypts a key row: every source pixel inverts its two pixels of the key if it's black
+	 * @param key The key row
+	 * @param src The source row, half as many pixels
+	 * @param enc Receives the encrypted row, as long as the key row
+	 */
+	void encryptRow(long[] key, long[] src, long[] enc);
+
+	/**
+	 * Stacks a key row and an encrypted row
+	 * @param overlay Receives the stacked row
+	 */
+	void overlayRow(long[] key, long[] enc, long[] overlay);
+
+	/**
+	 * Decrypts two rows of blocks: a clean pixel is black if its whole 2x2 block of the stacked key and
+	 * encrypted rows is black
+	 * @param clean Receives the clean row (ORed into it), half as many pixels
+	 */
+	void decryptRow(long[] keyTop, long[] keyBottom, long[] encTop, long[] encBottom, long[] clean);
+
+	/**
+	 * Decrypts two rows of an overlay like decryptRow
+	 * @param clean Receives the clean row (ORed into it), half as many pixels
+	 */
+	void decryptOverlayRow(long[] top, long[] bottom, long[] clean);
+
+	/**
+	 * @return The vector kernels if they can be used, the scalar ones otherwise
+	 */
+	static ShareKernels load() {
+		if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) return new ScalarKernels();
+		try {
+			// fails with a LinkageError if the class wasn't compiled or the module wasn't added
+			return (ShareKernels)Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			return new ScalarKernels();
+		}
+	}
+}
@@ -0,0 +1,273 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+/**
+ * Writes shares as 1-bit palette pngs (index 0 transparent white, index 1 black, like ShareBandImage),
+ * straight from the bits of the share. Much smaller and faster than writing a TYPE_INT_ARGB image with ImageIO,
+ * and still read by ImageIO (and so loadAndCheckEncrFile) like any other png.
+ */
+public class SharePngWriter {
+	/**
+	 * The png filter applied to each row before it is compressed
+	 */
+	public enum Filter {
+		NONE, SUB, UP, AVERAGE, PAETH,
+		/** picks the filter with the smallest sum of absolute differences for every row */
+		ADAPTIVE
+	}
+
+	/**
+	 * The writer used if none is given. Keys and encrypted images are random and barely compress at any level, so
+	 * the default level costs little there but helps a lot with decrypted images. Filters don't help with either.
+	 */
+	public static final SharePngWriter DEFAULT = new SharePngWriter(6, Filter.NONE);
+
+	private static final byte[] SIGNATURE = {(byte)137, 80, 78, 71, 13, 10, 26, 10};
+	// bytes of compressed data per IDAT chunk
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final int level;
+	private final Filter filter;
+
+	/**
+	 * @param level The deflate level, 0 (none) to 9 (best), see Deflater
+	 * @param filter The png filter
+	 */
+	public SharePngWriter(int level, Filter filter) {
+		if (level < 0 || level > 9) throw new IllegalArgumentException("Deflate level has to be 0 to 9: " + level);
+		this.level = level;
+		this.filter = filter;
+	}
+
+	/**
+	 * @param name A Filter, case is ignored
+	 * @return The filter
+	 * @throws IllegalArgumentException If there's no such filter
+	 */
+	public static Filter parseFilter(String name) {
+		return Filter.valueOf(name.toUpperCase(Locale.ROOT));
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Writes a share to a file
+	 * @param share The share
+	 * @param f The file, overwritten if it exists
+	 * @throws IOException If the file couldn't be written
+	 */
+	public void write(BitShare share, File f) throws IOException {
+		write(ShareBandImage.of(share), f, Progress.NONE);
+	}
+
+	/**
+	 * Writes a share to a file, reporting the rows written. A partially written file is removed.
+	 * @param share The share
+	 * @param f The file, overwritten if it exists
+	 * @param progress Receives the progress, may cancel writing
+	 * @throws IOException If the file couldn't be written
+	 */
+	public void write(BitShare share, File f, Progress progress) throws IOException {
+		write(ShareBandImage.of(share), f, progress);
+	}
+
+	/**
+	 * Writes a share band by band, so that only one band is in memory at once. A partially written file is removed.
+	 * @param img The share
+	 * @param f The file, overwritten if it exists
+	 * @param progress Receives the progress, may cancel writing
+	 * @throws IOException If the file couldn't be written or a band couldn't be produced
+	 */
+	public void write(ShareBandImage img, File f, Progress progress) throws IOException {
+		boolean written = false;
+		try (OutputStream out = new FileOutputStream(f)) {
+			write(img, out, progress);
+			written = true;
+		} finally {
+			if (!written) f.delete();
+		}
+	}
+
+	/**
+	 * Writes a share as png to a stream, band by band
+	 * @param img The share
+	 * @param out The stream, not closed
+	 * @param progress Receives the progress, may cancel writing
+	 * @throws IOException If the stream couldn't be written or a band couldn't be produced
+	 */
+	public void write(ShareBandImage img, OutputStream out, Progress progress) throws IOException {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, CHUNK_SIZE + 12));
+		data.write(SIGNATURE);
+
+		ByteBuffer header = ByteBuffer.allocate(13);
+		header.putInt(width).putInt(height);
+		header.put((byte)1); // bit depth
+		header.put((byte)3); // color type: palette
+		header.put((byte)0).put((byte)0).put((byte)0); // deflate, adaptive filtering, no interlace
+		writeChunk(data, "IHDR", header.array(), 13);
+		writeChunk(data, "PLTE", new byte[] {(byte)255, (byte)255, (byte)255, 0, 0, 0}, 6);
+		writeChunk(data, "tRNS", new byte[] {0}, 1); // index 0 transparent, index 1 opaque
+
+		int bytesPerRow = (width + 7) / 8;
+		// room for all longs of a row, the filter type and the filtered row
+		byte[] row = new byte[(bytesPerRow + 7) / 8 * 8];
+		byte[] prior = new byte[row.length];
+		byte[] filtered = new byte[bytesPerRow + 1];
+		byte[] candidate = new byte[bytesPerRow + 1];
+		ByteBuffer rowBuffer = ByteBuffer.wrap(row);
+
+		Deflater deflater = new Deflater(level);
+		try (DeflaterOutputStream idat = new DeflaterOutputStream(new IdatOutputStream(data), deflater, CHUNK_SIZE)) {
+			progress.begin(height);
+			for (int y = 0; y < height; ++y) {
+				long[] bits = img.getRow(y);
+				rowBuffer.clear();
+				// the png has the leftmost pixel in the highest bit of each byte, the share in the lowest bit
+				// of each long. reversing the long and writing it big endian gives both.
+				for (long word : bits) rowBuffer.putLong(Long.reverse(word));
+
+				if (filter == Filter.ADAPTIVE) {
+					long best = Long.MAX_VALUE;
+					for (Filter f : new Filter[] {Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE, Filter.PAETH}) {
+						long sum = filterRow(f, row, prior, bytesPerRow, candidate);
+						if (sum < best) {
+							best = sum;
+							System.arraycopy(candidate, 0, filtered, 0, filtered.length);
+						}
+					}
+				} else {
+					filterRow(filter, row, prior, bytesPerRow, filtered);
+				}
+				idat.write(filtered);
+
+				byte[] swap = prior;
+				prior = row;
+				row = swap;
+				rowBuffer = ByteBuffer.wrap(row);
+				progress.rowsDone(1);
+			}
+			// finishes the deflate stream and writes the last IDAT chunk, doesn't close data
+		} finally {
+			deflater.end();
+		}
+		writeChunk(data, "IEND", new byte[0], 0);
+		data.flush();
+	}
+
+	/**
+	 * Filters a row into result (type byte first)
+	 * @return The sum of the absolute values of the filtered bytes, to choose the best filter
+	 */
+	private static long filterRow(Filter filter, byte[] row, byte[] prior, int length, byte[] result) {
+		result[0] = (byte)filter.ordinal(); // the png filter types are in the order of the enum
+		long sum = 0;
+		for (int i = 0; i < length; ++i) {
+			// bit depths below 8 use the byte to the left, not the pixel
+			int x = row[i] & 0xFF;
+			int a = i > 0 ? row[i - 1] & 0xFF : 0;
+			int b = prior[i] & 0xFF;
+			int c = i > 0 ? prior[i - 1] & 0xFF : 0;
+			int value;
+			switch (filter) {
+			case SUB:
+				value = x - a;
+				break;
+			case UP:
+				value = x - b;
+				break;
+			case AVERAGE:
+				value = x - ((a + b) >>> 1);
+				break;
+			case PAETH:
+				value = x - paeth(a, b, c);
+				break;
+			default:
+				value = x;
+			}
+			result[i + 1] = (byte)value;
+			sum += Math.abs((byte)value);
+		}
+		return sum;
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) return a;
+		if (pb <= pc) return b;
+		return c;
+	}
+
+	private static void writeChunk(DataOutputStream data, String type, byte[] content, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(content, 0, length);
+		data.writeInt(length);
+		data.write(typeBytes);
+		data.write(content, 0, length);
+		data.writeInt((int)crc.getValue());
+	}
+
+	/**
+	 * Splits the compressed data into IDAT chunks. Closing it writes the last chunk, but doesn't close the png.
+	 */
+	private static class IdatOutputStream extends OutputStream {
+		private final DataOutputStream data;
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+		private int length = 0;
+
+		IdatOutputStream(DataOutputStream data) {
+			this.data = data;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (length == buffer.length) flushChunk();
+			buffer[length++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (length == buffer.length) flushChunk();
+				int n = Math.min(len, buffer.length - length);
+				System.arraycopy(b, off, buffer, length, n);
+				length += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void flushChunk() throws IOException {
+			if (length > 0) writeChunk(data, "IDAT", buffer, length);
+			length = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flushChunk();
+		}
+	}
+}
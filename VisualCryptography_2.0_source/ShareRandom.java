@@ -0,0 +1,110 @@
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.logging.Logger;
+
+
+/**
+ * The random numbers shares are generated with. They are taken from a Random (a SecureRandom for real shares) in
+ * batches of BATCH_BYTES and handed out a few bits at a time: an index into 4 blocks (e.g. which pixel of a black
+ * block stays white) takes 2 bits, other bounds (e.g. the 6 ways to pick 2 of 4 pixels for a white block) 32 bits.
+ * Not thread safe, every thread (band) needs its own instance.
+ */
+public class ShareRandom {
+	/** system property with the SecureRandom algorithm of newSecure(), e.g. "DRBG". SHA1PRNG if not set. */
+	public static final String ALGORITHM_PROPERTY = "visualcryptography.random.algorithm";
+	private static final String DEFAULT_ALGORITHM = "SHA1PRNG";
+	private static final int BATCH_BYTES = 4096;
+
+	private static final Logger LOG = Logger.getLogger(ShareRandom.class.getName());
+	private static final String ALGORITHM = algorithm();
+
+	private final Random source;
+	private final ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+	private long bits = 0;
+	private int bitsLeft = 0;
+
+	/**
+	 * @param source Where the random bits come from, e.g. a seeded Random to test with
+	 */
+	public ShareRandom(Random source) {
+		this.source = source;
+		batch.position(BATCH_BYTES);
+	}
+
+	/**
+	 * @return A generator of the ALGORITHM_PROPERTY algorithm seeded with 256 bits from the system SecureRandom
+	 * (see Crypting.newKeySeed()). Every band gets its own instance, so bands don't block each other (all NativePRNG
+	 * instances synchronize on /dev/urandom).
+	 */
+	public static ShareRandom newSecure() {
+		try {
+			SecureRandom random = SecureRandom.getInstance(ALGORITHM);
+			random.setSeed(Crypting.newKeySeed());
+			return new ShareRandom(random);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(ALGORITHM + " isn't available", e);
+		}
+	}
+
+	/**
+	 * @return A generator that is fully determined by the seed: a SHA1PRNG that is seeded before its first use
+	 */
+	public static ShareRandom newSeeded(byte[] seed) {
+		try {
+			SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+			random.setSeed(seed);
+			return new ShareRandom(random);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA1PRNG is required to be available", e);
+		}
+	}
+
+	/**
+	 * @return The given amount of random bits (1 to 32) in the lowest bits
+	 */
+	public int nextBits(int count) {
+		if (bitsLeft < count) {
+			// the bits left over are dropped, they are as random as the new ones
+			if (!batch.hasRemaining()) {
+				source.nextBytes(batch.array());
+				batch.clear();
+			}
+			bits = batch.getLong();
+			bitsLeft = 64;
+		}
+		int result = (int)(bits & (-1L >>> (64 - count)));
+		bits >>>= count;
+		bitsLeft -= count;
+		return result;
+	}
+
+	/**
+	 * @return A uniformly distributed number from 0 (inclusive) to bound (exclusive). Powers of two take only as
+	 * many bits as needed, other bounds are multiplied with 32 bits (Lemire's method), which have to be drawn again
+	 * only with a probability of less than bound / 2^32 to keep the numbers exactly uniform.
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) throw new IllegalArgumentException("bound has to be positive: " + bound);
+		if ((bound & (bound - 1)) == 0) return bound == 1 ? 0 : nextBits(Integer.numberOfTrailingZeros(bound));
+		long product = (nextBits(32) & 0xFFFFFFFFL) * bound;
+		if ((product & 0xFFFFFFFFL) < bound) {
+			// 2^32 % bound of the 2^32 values would make the lowest numbers a bit more likely
+			long threshold = (1L << 32) % bound;
+			while ((product & 0xFFFFFFFFL) < threshold) product = (nextBits(32) & 0xFFFFFFFFL) * bound;
+		}
+		return (int)(product >>> 32);
+	}
+
+	private static String algorithm() {
+		String algorithm = System.getProperty(ALGORITHM_PROPERTY, DEFAULT_ALGORITHM).trim();
+		try {
+			SecureRandom.getInstance(algorithm);
+			return algorithm;
+		} catch (NoSuchAlgorithmException e) {
+			LOG.warning("Invalid " + ALGORITHM_PROPERTY + ": " + algorithm);
+			return DEFAULT_ALGORITHM;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+
+/**
+ * Shows a share, to be put into a JScrollPane. Only the visible tiles are drawn, straight from the share at the
+ * current zoom into 1-bit images, and the most recently drawn ones are kept, so even the largest shares take little
+ * memory and scroll smoothly. Black pixels are drawn black, transparent ones aren't drawn.
+ * The zoom is a power of two and changed with the mouse wheel while Ctrl is held, dragging moves the view.
+ * The share must not be changed while it is shown.
+ */
+public class ShareView extends JComponent implements Scrollable {
+	private static final long serialVersionUID = 1L;
+	private static final int TILE_SIZE = 256;
+	// 8 KB each
+	private static final int MAX_TILES = 128;
+	public static final int MIN_ZOOM = -6;
+	public static final int MAX_ZOOM = 4;
+	private static final IndexColorModel COLORS = new IndexColorModel(1, 2,
+			new byte[]{0, 0}, new byte[]{0, 0}, new byte[]{0, 0}, new byte[]{0, (byte)255});
+
+	private BitShare share = null;
+	private int pixelSize = 1;
+	private int zoom = 0;
+	// by zoom and position, least recently drawn first
+	private final Map<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+			return size() > MAX_TILES;
+		}
+	};
+	private Point dragStart = null;
+
+	public ShareView() {
+		setToolTipText("Ctrl + mouse wheel to zoom, drag to move");
+		MouseAdapter mouse = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragStart = e.getPoint();
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				dragStart = null;
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (dragStart == null) return;
+				Rectangle visible = getVisibleRect();
+				visible.translate(dragStart.x - e.getX(), dragStart.y - e.getY());
+				scrollRectToVisible(visible);
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				if (e.isControlDown()) {
+					setZoom(zoom - e.getWheelRotation(), e.getPoint());
+				} else if (getParent() != null) {
+					// scrolling is up to the scroll pane
+					getParent().dispatchEvent(SwingUtilities.convertMouseEvent(ShareView.this, e, getParent()));
+				}
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
+	}
+
+	/**
+	 * Shows a share, or nothing for null
+	 */
+	public void setShare(BitShare share) {
+		setShare(share, 1);
+	}
+
+	/**
+	 * Shows a share with every pixel as a square of pixelSize pixels, e.g. a preview of a larger image
+	 * @param share The share or null
+	 * @param pixelSize The size of a pixel at zoom 0
+	 */
+	public void setShare(BitShare share, int pixelSize) {
+		if (pixelSize < 1) throw new IllegalArgumentException("pixelSize has to be at least 1: " + pixelSize);
+		this.share = share;
+		this.pixelSize = pixelSize;
+		tiles.clear();
+		revalidate();
+		repaint();
+	}
+
+	public BitShare getShare() {
+		return share;
+	}
+
+	/**
+	 * @return The zoom, a pixel is drawn 2^zoom pixels large
+	 */
+	public int getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * @param zoom A pixel is drawn 2^zoom pixels large, between MIN_ZOOM and MAX_ZOOM
+	 */
+	public void setZoom(int zoom) {
+		Rectangle visible = getVisibleRect();
+		setZoom(zoom, new Point((int)visible.getCenterX(), (int)visible.getCenterY()));
+	}
+
+	/**
+	 * Zooms keeping the pixel at anchor (in this component) where it is
+	 */
+	private void setZoom(int zoom, Point anchor) {
+		zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+		if (zoom == this.zoom) return;
+		double scale = scale();
+		double imageX = (anchor.x - offsetX()) / scale, imageY = (anchor.y - offsetY()) / scale;
+		JViewport viewport = (JViewport)SwingUtilities.getAncestorOfClass(JViewport.class, this);
+		Point onViewport = viewport == null ? null : SwingUtilities.convertPoint(this, anchor, viewport);
+
+		this.zoom = zoom;
+		revalidate();
+		repaint();
+		if (viewport == null) return;
+		// lay out right away to move the new view under the anchor
+		viewport.getParent().validate();
+		scale = scale();
+		int x = (int)Math.round(imageX * scale + offsetX()) - onViewport.x;
+		int y = (int)Math.round(imageY * scale + offsetY()) - onViewport.y;
+		Dimension extent = viewport.getExtentSize();
+		x = Math.max(0, Math.min(x, getWidth() - extent.width));
+		y = Math.max(0, Math.min(y, getHeight() - extent.height));
+		viewport.setViewPosition(new Point(x, y));
+	}
+
+	/**
+	 * @return The size of a share pixel on the screen
+	 */
+	private double scale() {
+		return Math.scalb((double)pixelSize, zoom);
+	}
+
+	private int scaledWidth() {
+		return share == null ? 0 : (int)Math.ceil(share.getWidth() * scale());
+	}
+
+	private int scaledHeight() {
+		return share == null ? 0 : (int)Math.ceil(share.getHeight() * scale());
+	}
+
+	// the share is centered if it's smaller than the component
+	private int offsetX() {
+		return Math.max(0, (getWidth() - scaledWidth()) / 2);
+	}
+
+	private int offsetY() {
+		return Math.max(0, (getHeight() - scaledHeight()) / 2);
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet()) return super.getPreferredSize();
+		return new Dimension(scaledWidth(), scaledHeight());
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (share == null) return;
+		int offsetX = offsetX(), offsetY = offsetY();
+		int width = scaledWidth(), height = scaledHeight();
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+		int fromX = Math.max(0, clip.x - offsetX) / TILE_SIZE, toX = Math.min(width, clip.x + clip.width - offsetX);
+		int fromY = Math.max(0, clip.y - offsetY) / TILE_SIZE, toY = Math.min(height, clip.y + clip.height - offsetY);
+		for (int tileY = fromY; tileY * TILE_SIZE < toY; ++tileY) {
+			for (int tileX = fromX; tileX * TILE_SIZE < toX; ++tileX) {
+				g.drawImage(tile(tileX, tileY), offsetX + tileX * TILE_SIZE, offsetY + tileY * TILE_SIZE, null);
+			}
+		}
+	}
+
+	private BufferedImage tile(int tileX, int tileY) {
+		long key = (long)(zoom - MIN_ZOOM) << 56 | (long)tileY << 28 | tileX;
+		BufferedImage tile = tiles.get(key);
+		if (tile == null) {
+			tile = drawTile(tileX, tileY);
+			tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Draws the pixels of a tile, each taken from the share pixel it is on
+	 */
+	private BufferedImage drawTile(int tileX, int tileY) {
+		BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_BINARY, COLORS);
+		byte[] data = ((DataBufferByte)tile.getRaster().getDataBuffer()).getData();
+		int stride = TILE_SIZE / 8;
+		double scale = scale();
+
+		int[] shareX = new int[TILE_SIZE];
+		int columns = 0;
+		for (; columns < TILE_SIZE; ++columns) {
+			int x = (int)((tileX * TILE_SIZE + columns) / scale);
+			if (x >= share.getWidth()) break;
+			shareX[columns] = x;
+		}
+		for (int y = 0; y < TILE_SIZE; ++y) {
+			int shareY = (int)((tileY * TILE_SIZE + y) / scale);
+			if (shareY >= share.getHeight()) break;
+			long[] row = share.getRow(shareY);
+			int offset = y * stride;
+			for (int x = 0; x < columns; ++x) {
+				// the leftmost pixel is the highest bit of a byte
+				if ((row[shareX[x] >>> 6] & (1L << shareX[x])) != 0) data[offset + (x >>> 3)] |= 0x80 >>> (x & 7);
+			}
+		}
+		return tile;
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return 16;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+	}
+
+	// fill the viewport when the share is smaller, to be centered in it
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+	}
+}
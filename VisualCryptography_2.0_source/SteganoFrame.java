@@ -1,4 +1,3 @@
-import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -10,7 +9,6 @@ import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -33,8 +31,8 @@ public class SteganoFrame extends JFrame implements ActionListener {
 	private JPanel pnlScrollSecondPic = new JPanel();
 	
 	private JLabel lblDescr = new JLabel("<html>Add two pictures (png, jpg or gif, will be converted to b/w)  below to encrypt the third one. </html>");
-	private JLabel lblFirst = new JLabel(new ImageIcon(), JLabel.CENTER);
-	private JLabel lblSecond = new JLabel(new ImageIcon(), JLabel.CENTER);
+	private ShareView viewFirst = new ShareView();
+	private ShareView viewSecond = new ShareView();
 	private JTextField tfFirst = new JTextField();
 	private JTextField tfSecond = new JTextField();
 	private JTextField tfSecure = new JTextField();
@@ -44,12 +42,13 @@ public class SteganoFrame extends JFrame implements ActionListener {
 	private JButton btnHide = new JButton("Hide");
 	private JButton btnSaveFirst = new JButton("Save first image to file");
 	private JButton btnSaveSecond = new JButton("Save second image to file");
-	private JScrollPane scrFirst = new JScrollPane(lblFirst);
-	private JScrollPane scrSecond = new JScrollPane(lblSecond);
+	private JScrollPane scrFirst = new JScrollPane(viewFirst);
+	private JScrollPane scrSecond = new JScrollPane(viewSecond);
+	private JobPanel pnlJob = new JobPanel(btnSelectFirst, btnSelectSecond, btnSelectSecure, btnHide, btnSaveFirst, btnSaveSecond);
 	
 	private JFileChooser fileChooser = new JFileChooser();
-	private BufferedImage imgFirst = null;
-	private BufferedImage imgSecond = null;
+	private BitShare shareFirst = null;
+	private BitShare shareSecond = null;
 	File fFirstFile = null;
 	File fSecondFile = null;
 	File fSecureFile = null;
@@ -66,6 +65,7 @@ public class SteganoFrame extends JFrame implements ActionListener {
 		pnlFileSecond.setAlignmentX(LEFT_ALIGNMENT);
 		pnlFileSecure.setAlignmentX(LEFT_ALIGNMENT);
 		pnlScrolls.setAlignmentX(LEFT_ALIGNMENT);
+		pnlJob.setAlignmentX(LEFT_ALIGNMENT);
 		
 		// action listener
 		btnSelectFirst.addActionListener(this);
@@ -134,6 +134,7 @@ public class SteganoFrame extends JFrame implements ActionListener {
 		pnlAll.add(btnHide);
 		pnlAll.add(Box.createVerticalStrut(10));
 		pnlAll.add(pnlScrolls);
+		pnlAll.add(pnlJob);
 		
 		add(pnlAll);
 		setSize(500, 500);
@@ -152,84 +153,70 @@ public class SteganoFrame extends JFrame implements ActionListener {
 				JOptionPane.showMessageDialog(this, "File not found", "ERROR", JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-			
-			// predominantly load the tree image files just to get their size
-			Dimension d = null;
-			try {
-				d = getBiggestDimension(fFirstFile, fSecondFile, fSecureFile);
-			} catch (IOException e1) {
-				e1.printStackTrace();
-			}
-			
-			// load the three given images
-			BufferedImage firstImg = null;
-			BufferedImage secondImg = null;
-			BufferedImage secureImg = null;
-			if (d != null) {
-				firstImg = Crypting.loadAndCheckSource(fFirstFile,(int)d.getWidth(), (int)d.getHeight(), true);
-				secondImg = Crypting.loadAndCheckSource(fSecondFile,(int)d.getWidth(), (int)d.getHeight(), true);
-				secureImg = Crypting.loadAndCheckSource(fSecureFile,(int)d.getWidth(), (int)d.getHeight(), true);
-			}
-			
-			if (firstImg == null || secondImg == null || secureImg == null) {
-				this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				JOptionPane.showMessageDialog(this, "One of the given files is not fit for steganography", "ERROR", JOptionPane.ERROR_MESSAGE);
-				return;
-			}
-			
-			BufferedImage images[] = Crypting.hideImage(firstImg, secondImg, secureImg);
-			
-			imgFirst = images[0];
-			imgSecond = images[1];
-			
-			if (imgFirst == null || imgSecond == null) {
-				JOptionPane.showMessageDialog(this, "Error while encrypting (should never happen :( )", "ERROR", JOptionPane.ERROR_MESSAGE);
-				this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				return;
-			}
-			
-			lblFirst.setIcon(new ImageIcon(imgFirst));
-			lblSecond.setIcon(new ImageIcon(imgSecond));
-			
-			btnSaveFirst.setEnabled(true);
-			btnSaveSecond.setEnabled(true);
-			this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+			File fFirst = fFirstFile;
+			File fSecond = fSecondFile;
+			File fSecure = fSecureFile;
+			pnlJob.run(new CryptingJob<BitShare[]>(this, job -> {
+				job.step("Loading images");
+				// predominantly load the tree image files just to get their size
+				Dimension d = null;
+				try {
+					d = getBiggestDimension(fFirst, fSecond, fSecure);
+				} catch (IOException e1) {
+					e1.printStackTrace();
+				}
+				
+				// load the three given images
+				BitShare firstImg = null;
+				BitShare secondImg = null;
+				BitShare secureImg = null;
+				if (d != null) {
+					firstImg = Crypting.loadAndCheckSourceShare(fFirst,(int)d.getWidth(), (int)d.getHeight(), true);
+					secondImg = Crypting.loadAndCheckSourceShare(fSecond,(int)d.getWidth(), (int)d.getHeight(), true);
+					secureImg = Crypting.loadAndCheckSourceShare(fSecure,(int)d.getWidth(), (int)d.getHeight(), true);
+				}
+				
+				if (firstImg == null || secondImg == null || secureImg == null) {
+					throw new CryptingJob.Failure("One of the given files is not fit for steganography");
+				}
+				
+				job.step("Hiding image");
+				BitShare shares[] = Crypting.hideImage(firstImg, secondImg, secureImg, job);
+				if (shares == null || shares[0] == null || shares[1] == null) {
+					throw new CryptingJob.Failure("Error while encrypting (should never happen :( )");
+				}
+				return shares;
+			}, shares -> {
+				shareFirst = shares[0];
+				shareSecond = shares[1];
+				
+				viewFirst.setShare(shareFirst);
+				viewSecond.setShare(shareSecond);
+				
+				btnSaveFirst.setEnabled(true);
+				btnSaveSecond.setEnabled(true);
+			}));
 		} else if (e.getSource() == btnSaveFirst) {
-			if (imgFirst == null) return;
+			if (shareFirst == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    fileChooser.setDialogTitle("Save key as..");
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-		    	this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 		    	File f = fileChooser.getSelectedFile();
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgFirst, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				} finally {
-					this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareFirst, f));
 		    }
 		} else if (e.getSource() == btnSaveSecond) {
-			if (imgSecond == null) return;
+			if (shareSecond == null) return;
 			fileChooser.setSelectedFile(new File(""));
 		    fileChooser.setDialogTitle("Save encrypted image as..");
-		    this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 		    if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
 		    	File f = fileChooser.getSelectedFile();
 		    	if (!f.toString().endsWith(".png")) {
 		    		f = new File(f.toString() + ".png");
 		    	}
-		    	try {
-					ImageIO.write(imgSecond, "png", f);
-				} catch (IOException e1) {
-					JOptionPane.showMessageDialog(this, "Could not Save file because: " + e1.getLocalizedMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
-				} finally {
-					this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-				}
+		    	pnlJob.queue(CryptingJob.save(this, shareSecond, f));
 		    }
 		} else if (e.getSource() == btnSelectFirst || e.getSource() == btnSelectSecond || e.getSource() == btnSelectSecure) {
 			fileChooser.setDialogTitle("Open image..");
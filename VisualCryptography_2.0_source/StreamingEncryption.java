@@ -0,0 +1,219 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+
+/**
+ * Encrypts images band by band straight from file to file, so that only a few rows of the source, the key and
+ * the encrypted image are in memory at once. Memory use depends on the band size and the width of the images,
+ * not on their height. Non-interlaced pngs are decoded in a single pass (see PngRowReader). Other formats can't
+ * jump to a row, so each band decodes the file from its start again: larger bands are faster there, smaller ones
+ * need less memory.
+ */
+public class StreamingEncryption {
+	/** Source rows per band if none are given */
+	public static final int DEFAULT_BAND_ROWS = 512;
+
+	/**
+	 * Encrypts an image with an existing key, see Crypting.encryptImage. Like loadAndCheckSource, a source
+	 * smaller than half the key is centered.
+	 * @param keyFile The key
+	 * @param sourceFile The image to be encrypted (converted to b/w like loadAndCheckSource does)
+	 * @param encFile The file to write the encrypted image to (png)
+	 * @param bandRows The amount of source rows to process at once
+	 * @return true if the image was encrypted, false if the key or source weren't valid (encFile is removed then)
+	 * @throws IOException If reading or writing failed
+	 */
+	public static boolean encrypt(File keyFile, File sourceFile, File encFile, int bandRows) throws IOException {
+		return encrypt(keyFile, sourceFile, encFile, bandRows, SharePngWriter.DEFAULT);
+	}
+	
+	/**
+	 * Same as encrypt(File, File, File, int), writing the encrypted image with the given writer
+	 */
+	public static boolean encrypt(File keyFile, File sourceFile, File encFile, int bandRows, SharePngWriter writer) throws IOException {
+		return encrypt(keyFile, sourceFile, encFile, bandRows, writer, Halftone.Method.THRESHOLD);
+	}
+	
+	/**
+	 * Same as encrypt(File, File, File, int, SharePngWriter), converting the source to b/w with the given
+	 * halftoning method (the error diffusion continues from band to band)
+	 */
+	public static boolean encrypt(File keyFile, File sourceFile, File encFile, int bandRows, SharePngWriter writer, Halftone.Method dither) throws IOException {
+		try (BandReader key = BandReader.open(keyFile); BandReader src = BandReader.open(sourceFile)) {
+			if (key == null || src == null) return false;
+			int width = key.getWidth();
+			int height = key.getHeight();
+			if (width % 2 != 0 || height % 2 != 0) return false;
+			int halfWidth = width / 2;
+			int halfHeight = height / 2;
+			if (src.getWidth() > halfWidth || src.getHeight() > halfHeight) return false;
+			int offsetX = (halfWidth - src.getWidth()) / 2;
+			int offsetY = (halfHeight - src.getHeight()) / 2;
+			Halftone halftone = new Halftone(dither, src.getWidth());
+
+			// the first band is checked before anything is written, the whole key once it's all read
+			BitShare firstKeyBand = BitShare.fromImage(key.read(0, Math.min(bandRows * 2, height)));
+			if (!isKeyRatio(firstKeyBand.getWidth(), firstKeyBand.getHeight(), firstKeyBand.countBlack())) return false;
+
+			long[] keyBlackPixels = {0};
+			ShareBandImage imgEnc = new ShareBandImage(width, height, bandRows * 2, (fromRow, rows) -> {
+				BitShare keyBand = fromRow == 0 ? firstKeyBand : BitShare.fromImage(key.read(fromRow, rows));
+				keyBlackPixels[0] += keyBand.countBlack();
+
+				// the part of the source that lies within this band, if any
+				int fromHalfRow = fromRow / 2;
+				BitShare srcBand = new BitShare(halfWidth, rows / 2);
+				int srcFrom = Math.max(fromHalfRow - offsetY, 0);
+				int srcTo = Math.min(fromHalfRow + rows / 2 - offsetY, src.getHeight());
+				if (srcFrom < srcTo) {
+					halftone.draw(srcBand, src.read(srcFrom, srcTo - srcFrom), offsetX, srcFrom + offsetY - fromHalfRow);
+				}
+				return Crypting.encryptImage(keyBand, srcBand);
+			});
+			writer.write(imgEnc, encFile, Progress.NONE);
+
+			if (!isKeyRatio(width, height, keyBlackPixels[0])) {
+				encFile.delete();
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return Whether 1/2 to 1/4 of the pixels are white, the same check as loadAndCheckEncrFile. Holds for every
+	 * band of a key as well, as every block of it has 2 or 3 black pixels.
+	 */
+	private static boolean isKeyRatio(int width, int height, long blackPixels) {
+		double whites = (double)width * height / (width * (long)height - blackPixels);
+		return whites >= 2 && whites <= 4;
+	}
+
+	/**
+	 * Generates a new key for an image and encrypts it, like KeyGenNEncryptFrame does. The key is written band by band
+	 * first and then generated a second time from the same (random, only kept in memory) seeds for the encryption.
+	 * @param sourceFile The image to be encrypted (converted to b/w like loadAndCheckSource does)
+	 * @param keyFile The file to write the key to (png)
+	 * @param encFile The file to write the encrypted image to (png)
+	 * @param bandRows The amount of source rows to process at once
+	 * @return true if the image was encrypted, false if the source couldn't be read as an image
+	 * @throws IOException If reading or writing failed
+	 */
+	public static boolean generateKeyAndEncrypt(File sourceFile, File keyFile, File encFile, int bandRows) throws IOException {
+		return generateKeyAndEncrypt(sourceFile, keyFile, encFile, bandRows, SharePngWriter.DEFAULT);
+	}
+	
+	/**
+	 * Same as generateKeyAndEncrypt(File, File, File, int), writing key and encrypted image with the given writer
+	 */
+	public static boolean generateKeyAndEncrypt(File sourceFile, File keyFile, File encFile, int bandRows, SharePngWriter writer) throws IOException {
+		return generateKeyAndEncrypt(sourceFile, keyFile, encFile, bandRows, writer, Halftone.Method.THRESHOLD);
+	}
+	
+	/**
+	 * Same as generateKeyAndEncrypt(File, File, File, int, SharePngWriter), converting the source to b/w with the
+	 * given halftoning method
+	 */
+	public static boolean generateKeyAndEncrypt(File sourceFile, File keyFile, File encFile, int bandRows, SharePngWriter writer, Halftone.Method dither) throws IOException {
+		try (BandReader src = BandReader.open(sourceFile)) {
+			if (src == null) return false;
+			int srcWidth = src.getWidth();
+			int srcHeight = src.getHeight();
+
+			byte[][] seeds = new byte[(srcHeight + bandRows - 1) / bandRows][];
+			for (int i = 0; i < seeds.length; ++i) seeds[i] = Crypting.newKeySeed();
+
+			try {
+				ShareBandImage imgKey = new ShareBandImage(srcWidth * 2, srcHeight * 2, bandRows * 2, (fromRow, rows) ->
+					Crypting.generateKey(new BitShare(srcWidth, rows / 2), seeds[fromRow / (bandRows * 2)]));
+				writer.write(imgKey, keyFile, Progress.NONE);
+
+				Halftone halftone = new Halftone(dither, srcWidth);
+				ShareBandImage imgEnc = new ShareBandImage(srcWidth * 2, srcHeight * 2, bandRows * 2, (fromRow, rows) -> {
+					BitShare keyBand = Crypting.generateKey(new BitShare(srcWidth, rows / 2), seeds[fromRow / (bandRows * 2)]);
+					BitShare srcBand = new BitShare(srcWidth, rows / 2);
+					halftone.draw(srcBand, src.read(fromRow / 2, rows / 2), 0, 0);
+					return Crypting.encryptImage(keyBand, srcBand);
+				});
+				writer.write(imgEnc, encFile, Progress.NONE);
+			} finally {
+				for (byte[] seed : seeds) Arrays.fill(seed, (byte)0);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads bands of rows of an image file, also used by MappedShare.importImage
+	 */
+	static class BandReader implements Closeable {
+		// the png if PngRowReader can read it, otherwise stream and reader
+		private final PngRowReader png;
+		private final ImageInputStream stream;
+		private final ImageReader reader;
+
+		private BandReader(PngRowReader png, ImageInputStream stream, ImageReader reader) {
+			this.png = png;
+			this.stream = stream;
+			this.reader = reader;
+		}
+
+		/**
+		 * @return The reader or null if the file is no readable image
+		 */
+		static BandReader open(File f) throws IOException {
+			if (f == null) return null;
+			PngRowReader png = PngRowReader.open(f);
+			if (png != null) return new BandReader(png, null, null);
+			ImageInputStream stream = ImageIO.createImageInputStream(f);
+			if (stream == null) return null;
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext()) {
+				stream.close();
+				return null;
+			}
+			ImageReader reader = readers.next();
+			// not seeking forward only, every band starts reading from the beginning again
+			reader.setInput(stream, false, true);
+			return new BandReader(null, stream, reader);
+		}
+
+		int getWidth() throws IOException {
+			return png != null ? png.getWidth() : reader.getWidth(0);
+		}
+
+		int getHeight() throws IOException {
+			return png != null ? png.getHeight() : reader.getHeight(0);
+		}
+
+		/**
+		 * @return The rows fromRow to fromRow + rows (exclusive) of the image, fastest if read top to bottom
+		 */
+		BufferedImage read(int fromRow, int rows) throws IOException {
+			if (png != null) return png.read(fromRow, rows);
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceRegion(new Rectangle(0, fromRow, getWidth(), rows));
+			return reader.read(0, param);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (png != null) {
+				png.close();
+				return;
+			}
+			reader.dispose();
+			stream.close();
+		}
+	}
+}
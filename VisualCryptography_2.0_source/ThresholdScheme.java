@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+
+/**
+ * A (k, n) threshold scheme: splits a b/w secret into n shares, any k (or more) of which reveal the secret when
+ * stacked, while fewer than k reveal nothing about it. Every secret pixel becomes a block of subpixels in every
+ * share. Its subpixels are the columns of a basis matrix (one for white, one for black secret pixels, one row per
+ * share), shuffled randomly for every pixel.
+ * The basis matrices are the smallest of these that fit:
+ * <ul>
+ * <li>k = 2: white is a single black column, black is the identity, so n subpixels per block</li>
+ * <li>k = n: white are the even, black the odd subsets of the shares, so 2^(n-1) subpixels</li>
+ * <li>otherwise the (k, k) matrices for every k shares, other shares white, so C(n, k) * 2^(k-1) subpixels</li>
+ * </ul>
+ * Stacking j shares always gives a white pixel fewer black subpixels than a black one, decrypt() classifies the
+ * blocks by that.
+ */
+public class ThresholdScheme {
+	/** the most subpixels per block, beyond that the shares get unusably large */
+	public static final int MAX_PIXEL_EXPANSION = 1024;
+	// source rows per band of generateShares, every band has its own random generator
+	private static final int BAND_ROWS = 64;
+
+	private final int k;
+	private final int n;
+	private final int pixelExpansion;
+	private final int blockWidth;
+	private final int blockHeight;
+	// [0 white / 1 black][column] -> the shares that get a black subpixel, bit (share % 64) of word (share / 64)
+	private final long[][][] basis;
+	// [j] -> black subpixels of a white / black secret pixel when j shares are stacked
+	private final int[] whiteWeights;
+	private final int[] blackWeights;
+
+	/**
+	 * @param k The amount of shares needed to reveal the secret, at least 2
+	 * @param n The amount of shares, at least k
+	 * @throws IllegalArgumentException If k or n are invalid or need more than MAX_PIXEL_EXPANSION subpixels
+	 */
+	public ThresholdScheme(int k, int n) {
+		if (k < 2 || n < k) throw new IllegalArgumentException("Need 2 <= k <= n: k=" + k + ", n=" + n);
+		this.k = k;
+		this.n = n;
+
+		if (expansion(k, n) > MAX_PIXEL_EXPANSION) throw new IllegalArgumentException("(" + k + ", " + n + ") needs more than " + MAX_PIXEL_EXPANSION + " subpixels");
+		List<long[]> white = new ArrayList<>();
+		List<long[]> black = new ArrayList<>();
+		int[] members = new int[k];
+		for (int i = 0; i < k; ++i) members[i] = i;
+		if (k == 2 && n > 2) {
+			long[] all = new long[(n + 63) >>> 6];
+			for (int i = 0; i < n; ++i) all[i >>> 6] |= 1L << i;
+			white.add(all);
+			for (int i = 1; i < n; ++i) white.add(new long[all.length]);
+			for (int i = 0; i < n; ++i) {
+				long[] one = new long[all.length];
+				one[i >>> 6] = 1L << i;
+				black.add(one);
+			}
+		} else {
+			while (true) {
+				addSubsetColumns(white, black, members);
+				// next k-subset in lexicographic order, there's only one for k = n
+				int i = k - 1;
+				while (i >= 0 && members[i] == n - k + i) --i;
+				if (i < 0) break;
+				++members[i];
+				for (int j = i + 1; j < k; ++j) members[j] = members[j - 1] + 1;
+			}
+		}
+		pixelExpansion = white.size();
+		basis = new long[][][] {white.toArray(new long[0][]), black.toArray(new long[0][])};
+
+		// as square as possible, the subpixels past pixelExpansion stay white in all shares
+		blockHeight = (int)Math.sqrt(pixelExpansion);
+		blockWidth = (pixelExpansion + blockHeight - 1) / blockHeight;
+
+		// the weights are the same for any j shares, so the first j will do
+		whiteWeights = new int[n + 1];
+		blackWeights = new int[n + 1];
+		for (int j = 1; j <= n; ++j) {
+			whiteWeights[j] = stackedWeight(basis[0], j);
+			blackWeights[j] = stackedWeight(basis[1], j);
+		}
+	}
+
+	/**
+	 * Adds the columns of the (k, k) scheme on the given shares, with all other shares white:
+	 * even subsets of the members go to white, odd ones to black
+	 */
+	private void addSubsetColumns(List<long[]> white, List<long[]> black, int[] members) {
+		for (int subset = 0; subset < 1 << members.length; ++subset) {
+			long[] column = new long[(n + 63) >>> 6];
+			for (int i = 0; i < members.length; ++i) {
+				if ((subset & (1 << i)) != 0) column[members[i] >>> 6] |= 1L << members[i];
+			}
+			(Integer.bitCount(subset) % 2 == 0 ? white : black).add(column);
+		}
+	}
+
+	/**
+	 * @return The subpixels per block of a (k, n) scheme, anything above MAX_PIXEL_EXPANSION if it's too many
+	 */
+	private static long expansion(int k, int n) {
+		if (k == 2) return Math.max(n, 2);
+		if (k > 11) return MAX_PIXEL_EXPANSION + 1L;
+		// C(n, k) * 2^(k-1), exact at every step
+		long subsets = 1;
+		for (int i = 1; i <= k; ++i) {
+			subsets = subsets * (n - k + i) / i;
+			if (subsets > MAX_PIXEL_EXPANSION) return MAX_PIXEL_EXPANSION + 1L;
+		}
+		return subsets << (k - 1);
+	}
+
+	/**
+	 * @return The black subpixels of stacking the first j shares of the columns
+	 */
+	private static int stackedWeight(long[][] columns, int j) {
+		int weight = 0;
+		for (long[] column : columns) {
+			for (int share = 0; share < j; ++share) {
+				if ((column[share >>> 6] & (1L << share)) != 0) {
+					++weight;
+					break;
+				}
+			}
+		}
+		return weight;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * @return The amount of subpixels every secret pixel is split into
+	 */
+	public int getPixelExpansion() {
+		return pixelExpansion;
+	}
+
+	/**
+	 * @return The width of the block of a secret pixel in the shares
+	 */
+	public int getBlockWidth() {
+		return blockWidth;
+	}
+
+	/**
+	 * @return The height of the block of a secret pixel in the shares
+	 */
+	public int getBlockHeight() {
+		return blockHeight;
+	}
+
+	/**
+	 * Securely splits a secret into n shares on all cores
+	 * @param secret The b/w secret
+	 * @return The n shares, blockWidth times as wide and blockHeight times as tall as the secret
+	 */
+	public BitShare[] generateShares(BitShare secret) {
+		return generateShares(secret, Progress.NONE);
+	}
+
+	/**
+	 * Securely splits a secret into n shares on all cores like generateShares(BitShare), reporting the rows of
+	 * the secret done. Bands of BAND_ROWS rows are generated with their own ShareRandom, like
+	 * Crypting.generateKeyParallel does.
+	 * @param progress Receives the progress (from several threads), may cancel the generation
+	 */
+	public BitShare[] generateShares(BitShare secret, Progress progress) {
+		int height = secret.getHeight();
+		BitShare[] shares = new BitShare[n];
+		for (int i = 0; i < n; ++i) shares[i] = new BitShare(secret.getWidth() * blockWidth, height * blockHeight);
+
+		progress.begin(height);
+		int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+		IntStream.range(0, bands).parallel().forEach(band -> {
+			int fromY = band * BAND_ROWS;
+			int toY = Math.min(fromY + BAND_ROWS, height);
+			generateRows(secret, shares, fromY, toY, ShareRandom.newSecure());
+			progress.rowsDone(toY - fromY);
+		});
+		return shares;
+	}
+
+	/**
+	 * Generates the blocks of the secret rows fromY (inclusive) to toY (exclusive) into the (transparent) shares
+	 */
+	private void generateRows(BitShare secret, BitShare[] shares, int fromY, int toY, ShareRandom random) {
+		int[] permutation = new int[pixelExpansion];
+		for (int i = 0; i < pixelExpansion; ++i) permutation[i] = i;
+		// the subpixels of the current block per share, row by row
+		long[][] blocks = new long[n][(blockWidth * blockHeight + 63) >>> 6];
+		long rowMask = (1L << blockWidth) - 1;
+
+		for (int y = fromY; y < toY; ++y) {
+			long[] secretRow = secret.getRow(y);
+			for (int x = 0; x < secret.getWidth(); ++x) {
+				long[][] columns = basis[(int)((secretRow[x >>> 6] >>> x) & 1)];
+				// shuffling the last permutation again is as random as shuffling the identity
+				for (int i = pixelExpansion - 1; i > 0; --i) {
+					int j = random.nextInt(i + 1);
+					int swap = permutation[i];
+					permutation[i] = permutation[j];
+					permutation[j] = swap;
+				}
+				for (int p = 0; p < pixelExpansion; ++p) {
+					long[] column = columns[permutation[p]];
+					for (int w = 0; w < column.length; ++w) {
+						for (long bits = column[w]; bits != 0; bits &= bits - 1) {
+							blocks[(w << 6) + Long.numberOfTrailingZeros(bits)][p >>> 6] |= 1L << p;
+						}
+					}
+				}
+
+				for (int share = 0; share < n; ++share) {
+					long[] block = blocks[share];
+					for (int r = 0; r < blockHeight; ++r) {
+						long bits = getBits(block, r * blockWidth) & rowMask;
+						if (bits != 0) orBits(shares[share].getRow(y * blockHeight + r), x * blockWidth, bits, blockWidth);
+					}
+					for (int w = 0; w < block.length; ++w) block[w] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stacks shares on top of each other
+	 * @param shares The shares, all of the same size
+	 * @return The stacked shares or null if there are none or their sizes differ
+	 */
+	public static BitShare stack(BitShare... shares) {
+		if (shares == null || shares.length == 0) return null;
+		for (BitShare share : shares) {
+			if (share == null || share.getWidth() != shares[0].getWidth() || share.getHeight() != shares[0].getHeight()) return null;
+		}
+		BitShare stacked = new BitShare(shares[0].getWidth(), shares[0].getHeight());
+		for (int y = 0; y < stacked.getHeight(); ++y) {
+			long[] row = stacked.getRow(y);
+			for (BitShare share : shares) {
+				long[] shareRow = share.getRow(y);
+				for (int w = 0; w < row.length; ++w) row[w] |= shareRow[w];
+			}
+		}
+		return stacked;
+	}
+
+	/**
+	 * Decrypts the secret from k or more different shares of it: they are stacked and every block with more black
+	 * subpixels than halfway between those of a white and a black secret pixel becomes black.
+	 * @param shares At least k different shares generated by this scheme
+	 * @return The secret or null if there are too few shares or they don't fit together
+	 */
+	public BitShare decrypt(BitShare... shares) {
+		if (shares == null || shares.length < k || shares.length > n) return null;
+		BitShare stacked = stack(shares);
+		if (stacked == null) return null;
+		if (stacked.getWidth() % blockWidth != 0 || stacked.getHeight() % blockHeight != 0) return null;
+
+		// twice the threshold, so it stays an int
+		int threshold = whiteWeights[shares.length] + blackWeights[shares.length];
+		long rowMask = (1L << blockWidth) - 1;
+		BitShare secret = new BitShare(stacked.getWidth() / blockWidth, stacked.getHeight() / blockHeight);
+		IntStream.range(0, secret.getHeight()).parallel().forEach(y -> {
+			long[] secretRow = secret.getRow(y);
+			for (int x = 0; x < secret.getWidth(); ++x) {
+				int black = 0;
+				for (int r = 0; r < blockHeight; ++r) {
+					black += Long.bitCount(getBits(stacked.getRow(y * blockHeight + r), x * blockWidth) & rowMask);
+				}
+				if (black * 2 > threshold) secretRow[x >>> 6] |= 1L << x;
+			}
+		});
+		return secret;
+	}
+
+	/**
+	 * @return The (up to) 64 bits starting at bit from, 0 past the end of bits
+	 */
+	private static long getBits(long[] bits, int from) {
+		int word = from >>> 6;
+		int shift = from & 63;
+		long value = bits[word] >>> shift;
+		if (shift != 0 && word + 1 < bits.length) value |= bits[word + 1] << (64 - shift);
+		return value;
+	}
+
+	/**
+	 * Sets the count lowest bits of value starting at bit from
+	 */
+	private static void orBits(long[] bits, int from, long value, int count) {
+		int word = from >>> 6;
+		int shift = from & 63;
+		bits[word] |= value << shift;
+		if (shift + count > 64) bits[word + 1] |= value >>> (64 - shift);
+	}
+}
@@ -22,6 +22,13 @@ public class VisualCryptography extends JFrame implements ActionListener {
 	private JButton btnDecrypt = new JButton("Decrypt Image");
 	
 	public static void main(String[] args) {
+		// with arguments, run the command line interface (no window is created, works headless)
+		if (args.length > 0) {
+			BatchCrypting.main(args);
+			return;
+		}
+		// start generating keys for the common sizes in the background
+		KeyPool.getDefault();
 		new VisualCryptography();
 	}
 	
@@ -0,0 +1,131 @@
+import java.util.function.IntUnaryOperator;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * ShareKernels with the (incubating) Vector API, as many longs at once as the cpu has room for (4 with AVX2,
+ * 8 with AVX-512). The bit tricks are the same as in ScalarKernels, the halves of the words are interleaved and
+ * split with shuffles. Only compiled and loaded with the jdk.incubator.vector module, see ShareKernels.
+ */
+public class VectorKernels extends ScalarKernels {
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	private static final long LOW = 0x00000000FFFFFFFFL;
+
+	// lanes 0 to LANES - 1 come from the first, LANES to 2 * LANES - 1 from the second vector
+	private static final VectorShuffle<Long> EVEN = shuffle(i -> 2 * i);
+	private static final VectorShuffle<Long> ODD = shuffle(i -> 2 * i + 1);
+	private static final VectorShuffle<Long> INTERLEAVE_FIRST = shuffle(i -> i / 2 + (i % 2) * LANES);
+	private static final VectorShuffle<Long> INTERLEAVE_SECOND = shuffle(i -> LANES / 2 + i / 2 + (i % 2) * LANES);
+
+	/**
+	 * @throws IllegalStateException If the cpu has no vectors of at least two longs, the scalar kernels are faster then
+	 */
+	public VectorKernels() {
+		if (LANES < 2) throw new IllegalStateException("No vectors of two or more longs");
+	}
+
+	private static VectorShuffle<Long> shuffle(IntUnaryOperator index) {
+		int[] indexes = new int[LANES];
+		for (int i = 0; i < LANES; ++i) indexes[i] = index.applyAsInt(i);
+		return VectorShuffle.fromArray(SPECIES, indexes, 0);
+	}
+
+	@Override
+	public void encryptRow(long[] key, long[] src, long[] enc) {
+		int i = 0;
+		// LANES source words make 2 * LANES key words
+		for (; 2 * (i + LANES) <= enc.length; i += LANES) {
+			LongVector s = LongVector.fromArray(SPECIES, src, i);
+			LongVector low = doubleBits(s.and(LOW));
+			LongVector high = doubleBits(s.lanewise(VectorOperators.LSHR, 32));
+			LongVector.fromArray(SPECIES, key, 2 * i).lanewise(VectorOperators.XOR, low.rearrange(INTERLEAVE_FIRST, high)).intoArray(enc, 2 * i);
+			LongVector.fromArray(SPECIES, key, 2 * i + LANES).lanewise(VectorOperators.XOR, low.rearrange(INTERLEAVE_SECOND, high)).intoArray(enc, 2 * i + LANES);
+		}
+		for (int w = 2 * i; w < enc.length; ++w) {
+			enc[w] = key[w] ^ doubleBits((int)(src[w >>> 1] >>> ((w & 1) * 32)));
+		}
+	}
+
+	@Override
+	public void overlayRow(long[] key, long[] enc, long[] overlay) {
+		int w = 0;
+		for (int upper = SPECIES.loopBound(overlay.length); w < upper; w += LANES) {
+			LongVector.fromArray(SPECIES, key, w).or(LongVector.fromArray(SPECIES, enc, w)).intoArray(overlay, w);
+		}
+		for (; w < overlay.length; ++w) overlay[w] = key[w] | enc[w];
+	}
+
+	@Override
+	public void decryptRow(long[] keyTop, long[] keyBottom, long[] encTop, long[] encBottom, long[] clean) {
+		int c = 0;
+		// 2 * LANES stacked words make LANES clean words
+		for (; 2 * (c + LANES) <= keyTop.length; c += LANES) {
+			int w = 2 * c;
+			LongVector first = fullBlocks(stacked(keyTop, keyBottom, encTop, encBottom, w));
+			LongVector second = fullBlocks(stacked(keyTop, keyBottom, encTop, encBottom, w + LANES));
+			storeClean(first, second, clean, c);
+		}
+		for (int w = 2 * c; w < keyTop.length; ++w) {
+			long both = (keyTop[w] | encTop[w]) & (keyBottom[w] | encBottom[w]);
+			clean[w >>> 1] |= fullBlocks(both) << ((w & 1) * 32);
+		}
+	}
+
+	@Override
+	public void decryptOverlayRow(long[] top, long[] bottom, long[] clean) {
+		int c = 0;
+		for (; 2 * (c + LANES) <= top.length; c += LANES) {
+			int w = 2 * c;
+			LongVector first = fullBlocks(LongVector.fromArray(SPECIES, top, w).and(LongVector.fromArray(SPECIES, bottom, w)));
+			LongVector second = fullBlocks(LongVector.fromArray(SPECIES, top, w + LANES).and(LongVector.fromArray(SPECIES, bottom, w + LANES)));
+			storeClean(first, second, clean, c);
+		}
+		for (int w = 2 * c; w < top.length; ++w) {
+			clean[w >>> 1] |= fullBlocks(top[w] & bottom[w]) << ((w & 1) * 32);
+		}
+	}
+
+	private static LongVector stacked(long[] keyTop, long[] keyBottom, long[] encTop, long[] encBottom, int w) {
+		LongVector top = LongVector.fromArray(SPECIES, keyTop, w).or(LongVector.fromArray(SPECIES, encTop, w));
+		LongVector bottom = LongVector.fromArray(SPECIES, keyBottom, w).or(LongVector.fromArray(SPECIES, encBottom, w));
+		return top.and(bottom);
+	}
+
+	/**
+	 * Puts the 32 bit results of two vectors of consecutive words together, two per clean word, and ORs them in
+	 */
+	private static void storeClean(LongVector first, LongVector second, long[] clean, int c) {
+		LongVector low = first.rearrange(EVEN, second);
+		LongVector high = first.rearrange(ODD, second).lanewise(VectorOperators.LSHL, 32);
+		LongVector.fromArray(SPECIES, clean, c).or(low).or(high).intoArray(clean, c);
+	}
+
+	/**
+	 * ScalarKernels.doubleBits on every lane
+	 */
+	private static LongVector doubleBits(LongVector x) {
+		x = x.or(x.lanewise(VectorOperators.LSHL, 16)).and(0x0000FFFF0000FFFFL);
+		x = x.or(x.lanewise(VectorOperators.LSHL, 8)).and(0x00FF00FF00FF00FFL);
+		x = x.or(x.lanewise(VectorOperators.LSHL, 4)).and(0x0F0F0F0F0F0F0F0FL);
+		x = x.or(x.lanewise(VectorOperators.LSHL, 2)).and(0x3333333333333333L);
+		x = x.or(x.lanewise(VectorOperators.LSHL, 1)).and(0x5555555555555555L);
+		return x.or(x.lanewise(VectorOperators.LSHL, 1));
+	}
+
+	/**
+	 * ScalarKernels.fullBlocks on every lane
+	 */
+	private static LongVector fullBlocks(LongVector both) {
+		LongVector x = both.and(both.lanewise(VectorOperators.LSHR, 1)).and(0x5555555555555555L);
+		x = x.or(x.lanewise(VectorOperators.LSHR, 1)).and(0x3333333333333333L);
+		x = x.or(x.lanewise(VectorOperators.LSHR, 2)).and(0x0F0F0F0F0F0F0F0FL);
+		x = x.or(x.lanewise(VectorOperators.LSHR, 4)).and(0x00FF00FF00FF00FFL);
+		x = x.or(x.lanewise(VectorOperators.LSHR, 8)).and(0x0000FFFF0000FFFFL);
+		return x.or(x.lanewise(VectorOperators.LSHR, 16)).and(LOW);
+	}
+}